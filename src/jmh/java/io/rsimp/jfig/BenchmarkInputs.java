@@ -0,0 +1,40 @@
+package io.rsimp.jfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+//shared fixtures so every benchmark measures the same fonts and inputs
+class BenchmarkInputs {
+    static final String SHORT = "jfig";
+    static final String MEDIUM = "The quick brown fox jumps over the lazy dog";
+    static final int LONG_LENGTH = 10000;
+
+    static String forSize(String size){
+        switch (size) {
+            case "short":
+                return SHORT;
+            case "medium":
+                return MEDIUM;
+            case "long":
+                StringBuilder input = new StringBuilder(LONG_LENGTH);
+                while (input.length() < LONG_LENGTH)
+                    input.append(MEDIUM).append(' ');
+                input.setLength(LONG_LENGTH);
+                return input.toString();
+            default:
+                throw new IllegalArgumentException("Unknown input size: " + size);
+        }
+    }
+
+    static byte[] readFont(String resourceName) throws IOException {
+        try (InputStream fontStream = BenchmarkInputs.class.getResourceAsStream(resourceName)) {
+            ByteArrayOutputStream fontBytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = fontStream.read(buffer)) != -1)
+                fontBytes.write(buffer, 0, read);
+            return fontBytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures {@link FIGDriver#convert(String, String)} in every horizontal layout mode, left to right and right to left.
+ * UNIVERSAL is smushing without any controlled rules, SMUSHED uses the font's own rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConvertBenchmark {
+    @Param({"FULL_SIZE", "FITTED", "SMUSHED", "UNIVERSAL"})
+    public String mode;
+
+    @Param({"short", "medium", "long"})
+    public String size;
+
+    private FIGDriver driver;
+    private FIGDriver reverseDriver;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        this.driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        switch (this.mode) {
+            case "FULL_SIZE":
+                this.driver.setFullWidthMode();
+                break;
+            case "FITTED":
+                this.driver.setKerningMode();
+                break;
+            case "SMUSHED":
+                this.driver.setOldLayout(63); //all controlled smushing rules
+                break;
+            case "UNIVERSAL":
+                this.driver.setUniversalSmushing();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown layout mode: " + this.mode);
+        }
+        this.input = BenchmarkInputs.forSize(this.size);
+        this.reverseDriver = new FIGDriver(this.driver.getRenderer());
+        this.reverseDriver.setLayout(this.driver.getOptions().getLayoutMask());
+        this.reverseDriver.setReverseMode();
+    }
+
+    @Benchmark
+    public String convert() {
+        return this.driver.convert(this.input, "");
+    }
+
+    @Benchmark
+    public String convertRightToLeft() {
+        return this.reverseDriver.convert(this.input, "");
+    }
+}
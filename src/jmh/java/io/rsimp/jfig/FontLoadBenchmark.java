@@ -0,0 +1,49 @@
+package io.rsimp.jfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures FIGfont parsing through {@link FIGDriver#FIGDriver(java.io.InputStream)}.
+ * The font is read into memory once so only parsing is measured, not disk I/O.
+ * The same font compiled by {@link FIGFontCompiler}, and loaded lazily, is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FontLoadBenchmark {
+    @Param({"/smslant.flf", "/smslant_custom_codetags.flf"})
+    public String font;
+
+    private byte[] fontBytes;
+    private byte[] compiledFontBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        this.fontBytes = BenchmarkInputs.readFont(this.font);
+        ByteArrayOutputStream compiledFont = new ByteArrayOutputStream();
+        FIGFontCompiler.compile(new ByteArrayInputStream(this.fontBytes), compiledFont);
+        this.compiledFontBytes = compiledFont.toByteArray();
+    }
+
+    @Benchmark
+    public FIGDriver loadFont() throws IOException {
+        return new FIGDriver(new ByteArrayInputStream(this.fontBytes));
+    }
+
+    @Benchmark
+    public FIGDriver loadCompiledFont() throws IOException {
+        return new FIGDriver(new ByteArrayInputStream(this.compiledFontBytes));
+    }
+
+    @Benchmark
+    public FIGRenderer loadFontLazily() throws IOException {
+        return FIGRenderer.loadLazily(new ByteArrayInputStream(this.fontBytes));
+    }
+}
@@ -0,0 +1,41 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures one keystroke of a live preview: typing a character after the input, then deleting it again.
+ * rerender converts the whole text on every keystroke, builder only updates a {@link FIGureBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LiveTypingBenchmark {
+    @Param({"short", "medium", "long"})
+    public String size;
+
+    private FIGRenderer renderer;
+    private FIGureBuilder builder;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        this.renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        this.input = BenchmarkInputs.forSize(this.size);
+        this.builder = this.renderer.newBuilder().append(this.input);
+    }
+
+    @Benchmark
+    public String rerender() {
+        return this.renderer.render(this.input + 'x');
+    }
+
+    @Benchmark
+    public int builder() {
+        return this.builder.append('x').removeLast();
+    }
+}
@@ -0,0 +1,90 @@
+package io.rsimp.jfig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import io.rsimp.jfig.SmushRules.ISmushFunction;
+import io.rsimp.jfig.SmushRules.IHardBlankSmushFunction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures each {@link SmushRules} rule over every adjacent sub-character pair of the input.
+ * The input is remapped onto smushable sub-characters so every rule sees hits as well as misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SmushRulesBenchmark {
+    private static final char HARD_BLANK = '$';
+    private static final String SUB_CHARACTERS = "_|/\\[]{}()<>$";
+
+    @Param({"EqualCharacter", "Underscore", "Hierarchical", "OppositePair", "BigX", "Hardblank", "Universal", "Aggregate"})
+    public String rule;
+
+    @Param({"short", "medium", "long"})
+    public String size;
+
+    private ISmushFunction smushFunction;
+    private char[] subCharacters;
+
+    @Setup
+    public void setup() {
+        switch (this.rule) {
+            case "EqualCharacter":
+                this.smushFunction = SmushRules.EqualCharacterRule;
+                break;
+            case "Underscore":
+                this.smushFunction = SmushRules.UnderscoreRule;
+                break;
+            case "Hierarchical":
+                this.smushFunction = SmushRules.HierarchicalRule;
+                break;
+            case "OppositePair":
+                this.smushFunction = SmushRules.OppositePairRule;
+                break;
+            case "BigX":
+                this.smushFunction = SmushRules.BigXRule;
+                break;
+            case "Hardblank":
+                this.smushFunction = SmushRules.aggregateRules(
+                    Collections.<ISmushFunction>emptyList(),
+                    Collections.singletonList(SmushRules.HardblankRule),
+                    HARD_BLANK
+                );
+                break;
+            case "Universal":
+                this.smushFunction = SmushRules.universalSmush(HARD_BLANK);
+                break;
+            case "Aggregate":
+                this.smushFunction = SmushRules.aggregateRules(
+                    Arrays.asList(
+                        SmushRules.EqualCharacterRule,
+                        SmushRules.UnderscoreRule,
+                        SmushRules.HierarchicalRule,
+                        SmushRules.OppositePairRule,
+                        SmushRules.BigXRule
+                    ),
+                    Collections.<IHardBlankSmushFunction>singletonList(SmushRules.HardblankRule),
+                    HARD_BLANK
+                );
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown smush rule: " + this.rule);
+        }
+
+        String input = BenchmarkInputs.forSize(this.size);
+        this.subCharacters = new char[input.length()];
+        for (int index = 0; index < input.length(); index++)
+            this.subCharacters[index] = SUB_CHARACTERS.charAt(input.charAt(index) % SUB_CHARACTERS.length());
+    }
+
+    @Benchmark
+    public void smushAdjacentPairs(Blackhole blackhole) {
+        for (int index = 1; index < this.subCharacters.length; index++)
+            blackhole.consume(this.smushFunction.trySmush(this.subCharacters[index - 1], this.subCharacters[index]));
+    }
+}
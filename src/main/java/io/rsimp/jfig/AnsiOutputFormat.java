@@ -0,0 +1,133 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+
+/**
+ * Colors FIGures for terminals with ANSI escape sequences.
+ * <p>
+ * Colors come from a {@link ColorGradient} and are reduced to the color depth of the terminal. An escape sequence is
+ * only written where the color changes, spaces keep whatever color is active, and colors are reset at the end of every
+ * line so terminals that scroll or wrap don't bleed them. Immutable and thread safe.
+ * </p>
+ */
+public final class AnsiOutputFormat implements FIGOutputFormat {
+    private static final String RESET = "\u001B[0m";
+
+    //the 16 standard colors as most terminals show them, in SGR order: 30-37 then 90-97
+    private static final int[] STANDARD_COLORS = {
+        0x000000, 0xCD0000, 0x00CD00, 0xCDCD00, 0x0000EE, 0xCD00CD, 0x00CDCD, 0xE5E5E5,
+        0x7F7F7F, 0xFF0000, 0x00FF00, 0xFFFF00, 0x5C5CFF, 0xFF00FF, 0x00FFFF, 0xFFFFFF
+    };
+    private static final int[] CUBE_LEVELS = { 0, 95, 135, 175, 215, 255 }; //channel levels of the 256 color cube
+
+    /**
+     * Colors a terminal can show
+     */
+    public enum ColorDepth {
+        /** the 16 standard colors */
+        COLORS_16,
+        /** the xterm 256 color palette */
+        COLORS_256,
+        /** 24 bit color */
+        TRUE_COLOR
+    }
+
+    private final ColorGradient gradient;
+    private final ColorDepth colorDepth;
+
+    /**
+     * @param gradient
+     * @param colorDepth colors are reduced to the nearest color the terminal can show
+     */
+    public AnsiOutputFormat(ColorGradient gradient, ColorDepth colorDepth){
+        this.gradient = gradient;
+        this.colorDepth = colorDepth;
+    }
+
+    @Override
+    public Output open(final Appendable out, final FIGSize size, final int characterCount){
+        return new Output() {
+            private int activeStyle = SAME_STYLE;
+
+            @Override
+            public int getStyle(int line, int column, int character, char subCharacter){
+                if (subCharacter == ' ')
+                    return SAME_STYLE;
+                return toTerminalColor(gradient.getColor(column, character, size, characterCount));
+            }
+
+            @Override
+            public void writeRun(int style, CharSequence subCharacters) throws IOException {
+                if (style != SAME_STYLE && style != this.activeStyle) {
+                    writeColor(out, style);
+                    this.activeStyle = style;
+                }
+                out.append(subCharacters);
+            }
+
+            @Override
+            public void writeLineBreak() throws IOException {
+                this.close();
+                out.append('\n');
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.activeStyle != SAME_STYLE)
+                    out.append(RESET);
+                this.activeStyle = SAME_STYLE;
+            }
+        };
+    }
+
+    //the color as the terminal would show it: an SGR code for 16 colors, a palette index for 256 colors, else 0xRRGGBB
+    private int toTerminalColor(int rgb){
+        switch (this.colorDepth) {
+            case COLORS_16:
+                int nearest = 0;
+                for (int colorIndex = 1; colorIndex < STANDARD_COLORS.length; colorIndex++)
+                    if (distance(rgb, STANDARD_COLORS[colorIndex]) < distance(rgb, STANDARD_COLORS[nearest]))
+                        nearest = colorIndex;
+                return nearest < 8 ? 30 + nearest : 90 + nearest - 8;
+            case COLORS_256:
+                return 16 + 36 * nearestCubeLevel(rgb >> 16 & 255) + 6 * nearestCubeLevel(rgb >> 8 & 255) + nearestCubeLevel(rgb & 255);
+            default:
+                return rgb;
+        }
+    }
+
+    private void writeColor(Appendable out, int terminalColor) throws IOException {
+        switch (this.colorDepth) {
+            case COLORS_16:
+                out.append("\u001B[").append(Integer.toString(terminalColor)).append('m');
+                break;
+            case COLORS_256:
+                out.append("\u001B[38;5;").append(Integer.toString(terminalColor)).append('m');
+                break;
+            default:
+                out.append("\u001B[38;2;")
+                    .append(Integer.toString(terminalColor >> 16 & 255)).append(';')
+                    .append(Integer.toString(terminalColor >> 8 & 255)).append(';')
+                    .append(Integer.toString(terminalColor & 255)).append('m');
+                break;
+        }
+    }
+
+    private static int nearestCubeLevel(int channel){
+        int nearest = 0;
+        for (int level = 1; level < CUBE_LEVELS.length; level++)
+            if (Math.abs(channel - CUBE_LEVELS[level]) < Math.abs(channel - CUBE_LEVELS[nearest]))
+                nearest = level;
+        return nearest;
+    }
+
+    //squared distance between two colors
+    private static int distance(int rgb, int otherRgb){
+        int distance = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int channelDifference = (rgb >> shift & 255) - (otherRgb >> shift & 255);
+            distance += channelDifference * channelDifference;
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,64 @@
+package io.rsimp.jfig;
+
+import java.util.Arrays;
+
+/**
+ * Colors blended across a FIGure from left to right, either column by column or FIGcharacter by FIGcharacter.
+ * <p>
+ * Colors are 0xRRGGBB values. A gradient with a single color colors everything alike. Immutable and thread safe.
+ * </p>
+ */
+public final class ColorGradient {
+    private final int[] colors;
+    private final boolean byCharacter;
+
+    private ColorGradient(int[] colors, boolean byCharacter){
+        if (colors.length == 0)
+            throw new IllegalArgumentException("A gradient needs at least one color");
+        this.colors = Arrays.copyOf(colors, colors.length);
+        this.byCharacter = byCharacter;
+    }
+
+    /**
+     * @param rgb 0xRRGGBB
+     * @return gradient of a single color
+     */
+    public static ColorGradient solid(int rgb){ return new ColorGradient(new int[] { rgb }, false); }
+
+    /**
+     * @param colors 0xRRGGBB colors blended evenly from the first column to the last
+     */
+    public static ColorGradient byColumn(int... colors){ return new ColorGradient(colors, false); }
+
+    /**
+     * @param colors 0xRRGGBB colors blended evenly from the first FIGcharacter to the last, each FIGcharacter has one color
+     */
+    public static ColorGradient byCharacter(int... colors){ return new ColorGradient(colors, true); }
+
+    //color of a sub-character, sub-characters outside any FIGcharacter take the first color when blending by character
+    int getColor(int column, int character, FIGSize size, int characterCount){
+        if (this.byCharacter)
+            return this.blend(Math.max(character, 0), characterCount);
+        return this.blend(column, size.getWidth());
+    }
+
+    //color at position of count positions spread evenly over the colors
+    private int blend(int position, int count){
+        if (this.colors.length == 1 || count <= 1)
+            return this.colors[0];
+        long scaled = (long)Math.min(position, count - 1) * (this.colors.length - 1) * 256 / (count - 1); //fixed point, 8 fraction bits
+        int colorIndex = (int)(scaled >> 8);
+        if (colorIndex >= this.colors.length - 1)
+            return this.colors[this.colors.length - 1];
+        int fraction = (int)(scaled & 255);
+        int from = this.colors[colorIndex];
+        int to = this.colors[colorIndex + 1];
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int fromChannel = (from >> shift) & 255;
+            int toChannel = (to >> shift) & 255;
+            rgb |= (fromChannel + ((toChannel - fromChannel) * fraction >> 8)) << shift;
+        }
+        return rgb;
+    }
+}
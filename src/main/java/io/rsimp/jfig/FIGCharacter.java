@@ -1,69 +1,47 @@
 package io.rsimp.jfig;
 
-import java.util.HashMap;
-
+//view of one glyph in a GlyphStore, lines are read straight from the packed arrays
 class FIGCharacter {
-    final FIGCharacterLine[] lines;
     final int width;
     final int height;
-
-    FIGCharacter(String[] fontFileLines){
-        this.height = fontFileLines.length;
-        this.lines = new FIGCharacterLine[this.height];
-
-        //process first line separately to optimize
-        String firstLine = fontFileLines[0];
-        char endMarker = firstLine.charAt(firstLine.length()-1);
-        String strippedLine = Utils.stripEnd(firstLine, endMarker); //strip line of end marker(s)
-        this.width = strippedLine.length(); //set io.rsimp.jfig.FIGCharacter width to length of line without marker(s)
-        this.lines[0] = new FIGCharacterLine(strippedLine); //process into FIGCharacterLine
-
-        //process remaining lines
-        for (int lineNum = 1; lineNum < this.height; lineNum++){
-            strippedLine = fontFileLines[lineNum].substring(0,this.width);
-            this.lines[lineNum] = new FIGCharacterLine(strippedLine);
-        }
+    final int pairIndex; //index into a KerningTable or -1 when the character isn't covered
+    final int[] blankLines; //indexes of lines without any sub-characters
+    private final GlyphStore glyphs;
+    private final int firstLine; //index of line 0 in the GlyphStore arrays
+
+    FIGCharacter(GlyphStore glyphs, int glyphId, int pairIndex){
+        this.glyphs = glyphs;
+        this.pairIndex = pairIndex;
+        this.height = glyphs.height;
+        this.width = glyphs.widths[glyphId];
+        this.firstLine = glyphId * glyphs.height;
+
+        int numBlankLines = 0;
+        for (int lineNum = 0; lineNum < this.height; lineNum++)
+            if (this.isEmpty(lineNum)) numBlankLines++;
+        this.blankLines = new int[numBlankLines];
+        for (int lineNum = 0, blankIndex = 0; lineNum < this.height; lineNum++)
+            if (this.isEmpty(lineNum)) this.blankLines[blankIndex++] = lineNum;
     }
 
-    private FIGCharacter(int width, int height, FIGCharacterLine[] lines){
-        this.width = width;
-        this.height = height;
-        this.lines = lines;
-    }
-
-    //create new io.rsimp.jfig.FIGCharacter by applying subcharacter smush results
-    FIGCharacter applySmushing(HashMap<Integer, Character> smushResults){
-        FIGCharacterLine[] smushedLines = new FIGCharacterLine[this.height];
+    int leftSpaces(int lineNum){ return this.glyphs.leftSpaces[this.firstLine + lineNum]; }
 
-        for (int lineIndex = 0; lineIndex < this.height; lineIndex++){
-            smushedLines[lineIndex] = smushResults.containsKey(lineIndex)
-                ? new FIGCharacterLine(this.lines[lineIndex], smushResults.get(lineIndex))
-                : this.lines[lineIndex];
-        }
+    int rightSpaces(int lineNum){ return this.glyphs.rightSpaces[this.firstLine + lineNum]; }
 
-        return new FIGCharacter(this.width, this.height, smushedLines);
-    }
+    int contentLength(int lineNum){ return this.glyphs.contentLengths[this.firstLine + lineNum]; }
 
-    class FIGCharacterLine {
-        final int leftSpaces;
-        final int rightSpaces;
-        final String content;
+    boolean isEmpty(int lineNum){ return this.contentLength(lineNum) == 0; }
 
-        boolean isEmpty(){ return this.content.length() == 0; }
+    char firstChar(int lineNum){ return this.glyphs.content[this.glyphs.contentOffsets[this.firstLine + lineNum]]; }
 
-        private FIGCharacterLine(String line){
-            int totalLength = line.length();
-            String rightStrippedline = Utils.stripEnd(line, ' ');
-            this.rightSpaces = totalLength - rightStrippedline.length();
-            this.content = Utils.stripStart(rightStrippedline, ' ');
-            this.leftSpaces = isEmpty() ? this.rightSpaces : totalLength - this.rightSpaces - this.content.length();
-        }
+    char lastChar(int lineNum){
+        int line = this.firstLine + lineNum;
+        return this.glyphs.content[this.glyphs.contentOffsets[line] + this.glyphs.contentLengths[line] - 1];
+    }
 
-        //morph with smushAppend results
-        private FIGCharacterLine(FIGCharacterLine originalLine, char smushChar){
-            this.leftSpaces = originalLine.leftSpaces;
-            this.rightSpaces = originalLine.rightSpaces;
-            this.content = smushChar + originalLine.content.substring(1);
-        }
+    //appends the line's content from start to its end
+    void appendContent(StringBuilder out, int lineNum, int start){
+        int line = this.firstLine + lineNum;
+        out.append(this.glyphs.content, this.glyphs.contentOffsets[line] + start, this.glyphs.contentLengths[line] - start);
     }
-}
\ No newline at end of file
+}
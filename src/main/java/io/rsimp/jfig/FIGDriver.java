@@ -1,20 +1,27 @@
 package io.rsimp.jfig;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
-import java.util.ArrayList;
-import io.rsimp.jfig.SmushRules.ISmushFunction;
-import io.rsimp.jfig.SmushRules.IHardBlankSmushFunction;
-
+import java.nio.charset.Charset;
+
+/**
+ * Mutable convenience wrapper around a {@link FIGRenderer} that keeps its layout and print direction between calls.
+ * <p>
+ * A FIGDriver is not thread safe. To share one parsed font between threads use {@link #getRenderer()},
+ * or wrap the same renderer in one FIGDriver per thread.
+ * </p>
+ */
 public class FIGDriver {
-    private final FIGFont figFont;
-    private boolean printRightToLeft;
-
-    private LayoutMode horizontalMode;
-    private ISmushFunction horizontalSmushFunction;
+    private final FIGRenderer renderer;
+    private FIGOptions options;
+    private FIGRenderCache renderCache; //optional, null renders every call
 
     /**
      * FIGDriver constructor that takes figfont in as a file
@@ -38,55 +45,49 @@ public class FIGDriver {
      * @param figfontStream
      * @throws IOException
      */
-    public FIGDriver(InputStream figfontStream) throws IOException {
-        this.figFont = new FIGFont(figfontStream);
-        this.printRightToLeft = this.figFont.getPrintRightToLeft();
-        loadLayout(this.figFont.getLayout());
-    }
-
-    private void loadLayout(Layout layout){
-        this.horizontalMode = layout.horizontal.mode;
-        if (layout.horizontal.applyUniversalSmushing) {
-            this.setUniversalSmushing();
-            return;
-        }
-
-        ArrayList<ISmushFunction> horizontalRules = new ArrayList<>();
-        ArrayList<IHardBlankSmushFunction> horizontalHardBreakRules = new ArrayList<>();
-        if (this.horizontalMode == LayoutMode.SMUSHED){
-            if (layout.horizontal.applyEqualCharSmushing)
-                horizontalRules.add(SmushRules.EqualCharacterRule);
-            if (layout.horizontal.applyUnderscoreSmushing)
-                horizontalRules.add(SmushRules.UnderscoreRule);
-            if (layout.horizontal.applyHeirarchySmushing)
-                horizontalRules.add(SmushRules.HierarchicalRule);
-            if (layout.horizontal.applyOppositePairSmushing)
-                horizontalRules.add(SmushRules.OppositePairRule);
-            if (layout.horizontal.applyBigXSmushing)
-                horizontalRules.add(SmushRules.BigXRule);
-            if (layout.horizontal.applyHardBlankSmushing)
-                horizontalHardBreakRules.add(SmushRules.HardblankRule);
-            this.horizontalSmushFunction = SmushRules.aggregateRules(
-                horizontalRules,
-                horizontalHardBreakRules,
-                this.figFont.getHardBlank()
-            );
-        }
+    public FIGDriver(InputStream figfontStream) throws IOException { this(new FIGRenderer(figfontStream)); }
 
+    /**
+     * FIGDriver constructor that shares an already loaded renderer
+     *
+     * @param renderer
+     */
+    public FIGDriver(FIGRenderer renderer) {
+        this.renderer = renderer;
+        this.options = renderer.getDefaultOptions();
+    }
+
+    /**
+     * @return the thread safe renderer backing this driver
+     */
+    public FIGRenderer getRenderer(){ return this.renderer; }
+
+    /**
+     * @return the options currently used by convert
+     */
+    public FIGOptions getOptions(){ return this.options; }
+
+    /**
+     * Sets a cache consulted by convert before rendering, may be shared between drivers and threads
+     *
+     * @param renderCache cache to use or null to render every call
+     */
+    public void setRenderCache(FIGRenderCache renderCache){
+        this.renderCache = renderCache;
     }
 
     /**
      * Sets horizontal layout mode to use full width fig characters
      */
     public void setFullWidthMode() {
-        this.horizontalMode = LayoutMode.FULL_SIZE;
+        this.options = this.options.withFullWidthMode();
     }
 
     /**
      * Sets horizontal layout mode to fit fig characters as closely together by removing overlapping whitespace
      */
     public void setKerningMode(){
-        this.horizontalMode = LayoutMode.FITTED;
+        this.options = this.options.withKerningMode();
     }
 
     /**
@@ -94,8 +95,7 @@ public class FIGDriver {
      * Universal smushing simply overrides the sub-character from the earlier FIGcharacter with the sub-character from the later FIGcharacter
      */
     public void setUniversalSmushing(){
-        this.horizontalMode = LayoutMode.SMUSHED;
-        this.horizontalSmushFunction = SmushRules.universalSmush(this.figFont.getHardBlank());
+        this.options = this.options.withUniversalSmushing();
     }
 
     /**
@@ -104,7 +104,7 @@ public class FIGDriver {
      * @param layoutMask
      */
     public void setLayout(int layoutMask){
-        this.loadLayout(Layout.fromFullMask(layoutMask));
+        this.options = this.options.withLayout(layoutMask);
     }
 
     /**
@@ -113,14 +113,59 @@ public class FIGDriver {
      * @param oldLayoutMask
      */    
     public void setOldLayout(int oldLayoutMask){
-        this.loadLayout(Layout.fromOldMask(oldLayoutMask));
+        this.options = this.options.withOldLayout(oldLayoutMask);
     }
 
     /**
      * Sets the output to display in reverse
      */
     public void setReverseMode(){
-        this.printRightToLeft = true;
+        this.options = this.options.withPrintRightToLeft(true);
+    }
+
+    /**
+     * Sets the code point rendered in place of characters missing from the font, 0 by default
+     *
+     * @param fallbackCodePoint
+     */
+    public void setFallbackCodePoint(int fallbackCodePoint){
+        this.options = this.options.withFallbackCodePoint(fallbackCodePoint);
+    }
+
+    /**
+     * Sets the maximum output width, rows wider than it are wrapped at word boundaries
+     *
+     * @param width maximum width including the prefix, 0 to never wrap
+     */
+    public void setWidth(int width){
+        this.options = this.options.withWidth(width);
+    }
+
+    /**
+     * Sets where output lines are placed within the output width
+     *
+     * @param justification
+     */
+    public void setJustification(FIGOptions.Justification justification){
+        this.options = this.options.withJustification(justification);
+    }
+
+    /**
+     * Sets whether spaces at the end of output lines are left out
+     *
+     * @param trimTrailingSpaces
+     */
+    public void setTrimTrailingSpaces(boolean trimTrailingSpaces){
+        this.options = this.options.withTrimTrailingSpaces(trimTrailingSpaces);
+    }
+
+    /**
+     * Sets the sub-character output is framed with
+     *
+     * @param border 0 for no frame
+     */
+    public void setBorder(char border){
+        this.options = this.options.withBorder(border);
     }
 
     /**
@@ -131,30 +176,63 @@ public class FIGDriver {
      * @return
      */
     public String convert(String input, String prefix){
-        if (this.printRightToLeft)
-            input = new StringBuilder(input).reverse().toString();
-        FIGure outputFIGure = new FIGure(this.figFont.get(input.charAt(0)), prefix);
-        FIGCharacter figCharacter;
-        switch(this.horizontalMode){
-            case FULL_SIZE:
-                for(int inputIndex = 1; inputIndex < input.length(); inputIndex++) {
-                    figCharacter = this.figFont.get(input.charAt(inputIndex));
-                    outputFIGure.append(figCharacter);
-                }
-                break;
-            case FITTED:
-                for(int inputIndex = 1; inputIndex < input.length(); inputIndex++) {
-                    figCharacter = this.figFont.get(input.charAt(inputIndex));
-                    outputFIGure.fittedAppend(figCharacter);
-                }
-                break;
-            case SMUSHED:
-                for(int inputIndex = 1; inputIndex < input.length(); inputIndex++) {
-                    figCharacter = this.figFont.get(input.charAt(inputIndex));
-                    outputFIGure.smushAppend(figCharacter, this.horizontalSmushFunction);
-                }
-                break;
-        }
-        return outputFIGure.toString(this.figFont.getHardBlank());
+        FIGOptions callOptions = this.options.withPrefix(prefix);
+        return this.renderCache != null
+            ? this.renderCache.render(this.renderer, input, callOptions)
+            : this.renderer.render(input, callOptions);
+    }
+
+    /**
+     * Measures the FIGure convert would return without rendering it
+     *
+     * @param input
+     * @param prefix
+     * @return width and height of the output in sub-characters
+     */
+    public FIGSize measure(CharSequence input, String prefix){
+        return this.renderer.measure(input, this.options.withPrefix(prefix));
+    }
+
+    /**
+     * Converts a string into a FIGure written in an output format, formatted output isn't cached
+     *
+     * @param input
+     * @param prefix
+     * @param format for example {@link AnsiOutputFormat} or {@link HtmlOutputFormat}
+     * @return
+     */
+    public String convert(String input, String prefix, FIGOutputFormat format){
+        return this.renderer.render(input, this.options.withPrefix(prefix), format);
+    }
+
+    /**
+     * Converts text into a FIGure written straight to out
+     *
+     * @param input
+     * @param prefix
+     * @param out any Appendable, for example a StringBuilder or a Writer
+     * @throws IOException if out fails
+     */
+    public void convert(CharSequence input, String prefix, Appendable out) throws IOException {
+        FIGOptions callOptions = this.options.withPrefix(prefix);
+        if (this.renderCache != null)
+            out.append(this.renderCache.render(this.renderer, input.toString(), callOptions));
+        else
+            this.renderer.render(input, callOptions, out);
+    }
+
+    /**
+     * Converts text into a FIGure encoded straight to out, the stream is flushed but not closed
+     *
+     * @param input
+     * @param prefix
+     * @param out
+     * @param charset
+     * @throws IOException if out fails
+     */
+    public void convert(CharSequence input, String prefix, OutputStream out, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+        this.convert(input, prefix, writer);
+        writer.flush();
     }
 }
@@ -1,15 +1,31 @@
 package io.rsimp.jfig;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.ZipInputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 //information about structure here: http://www.jave.de/figlet/figfont.html
+//TOIlet .tlf fonts use the same structure with a "tlf2a" signature, both are read as UTF-8
+//compiled fonts are written by FIGFontCompiler, all values big endian:
+//[int magic][int version][int header length][char[] header line]
+//[int glyph count][int[] widths][int[] left spaces][int[] right spaces][int[] content lengths][int content length][char[] content]
+//[int code count][int[] codes][int[] glyph ids]
+//the glyph arrays are the font's GlyphStore as is
 class FIGFont {
+    static final int COMPILED_MAGIC = 0x4A464947; //"JFIG", can't start a text font which begins with "flf2a"
+    static final int COMPILED_VERSION = 2;
+    private static final int ZIP_MAGIC = 0x504B0304; //"PK\3\4", the local file header starting a zip archive
+
     private static final Pattern CODE_TAG_PATTERN = Pattern.compile("(-)?(0x?)?([0-9abcdef]+)(?:\\s+(.*))?", Pattern.CASE_INSENSITIVE);
     private static final ArrayList<Character> requiredCharactersList = new ArrayList<>();
     static {
@@ -27,8 +43,12 @@ class FIGFont {
 
     //read only fields from the header
     private final FIGFontHeader header;
-    private final Layout layout;
-    private HashMap<Character, FIGCharacter> FIGCharacters = new HashMap<>();
+    private final int layoutMask;
+    private final GlyphIndex glyphIds = new GlyphIndex();
+    private final AtomicReferenceArray<FIGCharacter> FIGCharacters; //by glyph id, filled on first use when parsed lazily
+    private final GlyphStore glyphs; //every glyph, null when parsed lazily
+    private final String fontText; //text of a lazily parsed font, null otherwise
+    private final int[] glyphOffsets; //start of each glyph's first line in fontText, null unless parsed lazily
 
     char getHardBlank(){ return this.header.hardBlank; }
 
@@ -38,39 +58,307 @@ class FIGFont {
                 : false;
     }
 
-    Layout getLayout(){return this.layout;}
+    int getLayoutMask(){return this.layoutMask;}
+
+    int getHeight(){ return this.header.characterHeight; }
+
+    FIGCharacter get(int codePoint){
+        int glyphId = this.glyphIds.get(codePoint);
+        if (glyphId == GlyphIndex.NO_GLYPH)
+            return null;
+        FIGCharacter figCharacter = this.FIGCharacters.get(glyphId);
+        return figCharacter != null ? figCharacter : this.parseLazily(glyphId);
+    }
+
+    //reads a text or compiled font, compiled fonts are read whole into the heap
+    //they aren't memory mapped, their glyph arrays are copied out of the buffer anyway and a mapping would only pin the file
+    //lazy text fonts only index their glyphs up front, compiled fonts are never parsed lazily as they are already cheap to load
+    static FIGFont read(File figfont, boolean lazy) throws IOException {
+        try (FileChannel channel = FileChannel.open(figfont.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            if (channel.read(magic, 0) == 4 && magic.getInt(0) == COMPILED_MAGIC) {
+                ByteBuffer compiledFont = ByteBuffer.allocate((int)channel.size());
+                while (compiledFont.hasRemaining())
+                    if (channel.read(compiledFont) < 0)
+                        break;
+                compiledFont.flip();
+                return new FIGFont(compiledFont);
+            }
+        }
+        return read(new FileInputStream(figfont), lazy);
+    }
 
-    FIGCharacter get(char character){ return this.FIGCharacters.get(character);}
+    //reads a text, compiled or zipped font, told apart by the first bytes of the stream
+    //zipped fonts are decoded while parsing from their archive's first entry, like figlet does
+    static FIGFont read(InputStream figfont, boolean lazy) throws IOException {
+        BufferedInputStream bufferedFont = new BufferedInputStream(figfont);
+        bufferedFont.mark(4);
+        int magic = 0;
+        int bytesRead = 0;
+        for (int nextByte; bytesRead < 4 && (nextByte = bufferedFont.read()) >= 0; bytesRead++)
+            magic = (magic << 8) | nextByte;
+        bufferedFont.reset();
+
+        if (bytesRead == 4 && magic == ZIP_MAGIC) {
+            ZipInputStream zippedFont = new ZipInputStream(bufferedFont);
+            if (zippedFont.getNextEntry() == null) {
+                zippedFont.close();
+                throw new IOException("Zipped font archive is empty");
+            }
+            return read(zippedFont, lazy);
+        }
+        if (bytesRead == 4 && magic == COMPILED_MAGIC) {
+            try (InputStream compiledFont = bufferedFont) {
+                ByteArrayOutputStream compiledBytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int length; (length = compiledFont.read(buffer)) >= 0; )
+                    compiledBytes.write(buffer, 0, length);
+                return new FIGFont(ByteBuffer.wrap(compiledBytes.toByteArray()));
+            }
+        }
+        if (!lazy)
+            return new FIGFont(bufferedFont);
+        try (Reader fontReader = new InputStreamReader(bufferedFont, StandardCharsets.UTF_8)) {
+            StringBuilder fontText = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int length; (length = fontReader.read(buffer)) >= 0; )
+                fontText.append(buffer, 0, length);
+            return new FIGFont(fontText.toString());
+        }
+    }
 
+    //parses a text font
     FIGFont(InputStream figfont) throws IOException{
+        int[] glyphCodes = new int[128]; //code of each glyph, by glyph id
         try (BufferedReader fontReader = new BufferedReader(new InputStreamReader(figfont, StandardCharsets.UTF_8))){
             //parse header
             this.header = new FIGFontHeader(fontReader.readLine());
-            this.layout = this.header.fullLayoutMask.isPresent()
-                ? Layout.fromFullMask(this.header.fullLayoutMask.get())
-                : Layout.fromOldMask(this.header.oldLayoutMask);
+            this.layoutMask = this.header.getLayoutMask();
+            GlyphStore.Builder glyphs = new GlyphStore.Builder(this.header.characterHeight, 128);
 
             //parse comments but don't save, meant for authoring
             Utils.readlines(fontReader, this.header.numCommentLines);
 
-            //parse required FIGCharacters
+            //parse required FIGCharacters, their glyph ids are their indexes in the required list
             String[] fontCharacterLines;
-            for(char requiredCharacter : requiredCharactersList){
+            for(int requiredIndex = 0; requiredIndex < requiredCharactersList.size(); requiredIndex++){
                 fontCharacterLines = Utils.readlines(fontReader, this.header.characterHeight);
-                this.FIGCharacters.put(requiredCharacter, new FIGCharacter(fontCharacterLines));
+                glyphCodes = setGrowing(glyphCodes, glyphs.add(fontCharacterLines), requiredCharactersList.get(requiredIndex));
             }
 
             //parse optional code tag FIGcharacters
             String codeTag; //gives character code and comment in a header line
             while ((codeTag = fontReader.readLine()) != null && !codeTag.trim().isEmpty()) {
-                char optionalCharacter = extractCharFromCodeTag(codeTag);
+                int optionalCharacter = extractCodeFromCodeTag(codeTag);
                 fontCharacterLines = Utils.readlines(fontReader, this.header.characterHeight);
-                this.FIGCharacters.put(optionalCharacter, new FIGCharacter(fontCharacterLines));
+                glyphCodes = setGrowing(glyphCodes, glyphs.add(fontCharacterLines), optionalCharacter);
             }
+            this.glyphs = glyphs.build();
+        }
+        this.fontText = null;
+        this.glyphOffsets = null;
+
+        //glyphs are indexed in file order, so a code tag repeating an earlier code replaces its glyph
+        this.FIGCharacters = new AtomicReferenceArray<>(this.glyphs.getGlyphCount());
+        for (int glyphId = 0; glyphId < this.glyphs.getGlyphCount(); glyphId++) {
+            this.glyphIds.put(glyphCodes[glyphId], glyphId);
+            this.FIGCharacters.set(glyphId, new FIGCharacter(this.glyphs, glyphId, pairIndexOf(glyphId)));
+        }
+    }
+
+    //indexes a text font without parsing its glyphs, only the header and code tags are parsed
+    private FIGFont(String fontText) throws FIGFontFormatException {
+        this.fontText = fontText;
+        this.glyphs = null;
+        int lineStart = 0;
+        this.header = new FIGFontHeader(fontText.substring(0, this.lineEnd(lineStart)));
+        this.layoutMask = this.header.getLayoutMask();
+        int height = this.header.characterHeight;
+
+        //skip the header and comments
+        lineStart = this.skipLines(lineStart, 1 + this.header.numCommentLines);
+
+        int[] glyphOffsets = new int[128];
+        int glyphCount = 0;
+        for(int requiredIndex = 0; requiredIndex < requiredCharactersList.size(); requiredIndex++){
+            glyphOffsets = setGrowing(glyphOffsets, glyphCount, lineStart);
+            this.glyphIds.put(requiredCharactersList.get(requiredIndex), glyphCount++);
+            lineStart = this.skipLines(lineStart, height);
+        }
+
+        //code tag lines end at the end of the text or at a blank line
+        while (lineStart < fontText.length()) {
+            String codeTag = fontText.substring(lineStart, this.lineEnd(lineStart));
+            if (codeTag.trim().isEmpty())
+                break;
+            int optionalCharacter = extractCodeFromCodeTag(codeTag);
+            lineStart = this.skipLines(lineStart, 1);
+            glyphOffsets = setGrowing(glyphOffsets, glyphCount, lineStart);
+            this.glyphIds.put(optionalCharacter, glyphCount++);
+            lineStart = this.skipLines(lineStart, height);
+        }
+        this.glyphOffsets = Arrays.copyOf(glyphOffsets, glyphCount);
+        this.FIGCharacters = new AtomicReferenceArray<>(glyphCount);
+    }
+
+    //parses the glyph from the lazily parsed font text, racing threads may parse it twice but only one FIGCharacter is published
+    private FIGCharacter parseLazily(int glyphId){
+        String[] fontCharacterLines = new String[this.header.characterHeight];
+        int lineStart = this.glyphOffsets[glyphId];
+        for (int lineNum = 0; lineNum < fontCharacterLines.length && lineStart < this.fontText.length(); lineNum++) {
+            fontCharacterLines[lineNum] = this.fontText.substring(lineStart, this.lineEnd(lineStart));
+            lineStart = this.skipLines(lineStart, 1);
+        }
+        GlyphStore.Builder glyph = new GlyphStore.Builder(this.header.characterHeight, 1);
+        try {
+            glyph.add(fontCharacterLines);
+        } catch (FIGFontFormatException e) {
+            throw new IllegalStateException("Lazily parsed glyph is malformed", e); //reported at render time, not load time
+        }
+        FIGCharacter figCharacter = new FIGCharacter(glyph.build(), 0, pairIndexOf(glyphId));
+        if (this.FIGCharacters.compareAndSet(glyphId, null, figCharacter))
+            return figCharacter;
+        return this.FIGCharacters.get(glyphId);
+    }
+
+    //end of the line starting at lineStart, line terminators are the same as BufferedReader.readLine
+    private int lineEnd(int lineStart){
+        int lineEnd = lineStart;
+        while (lineEnd < this.fontText.length() && this.fontText.charAt(lineEnd) != '\n' && this.fontText.charAt(lineEnd) != '\r')
+            lineEnd++;
+        return lineEnd;
+    }
+
+    //start of the line numLines after the line starting at lineStart, or the text length when the text ends first
+    private int skipLines(int lineStart, int numLines){
+        for (int lineNum = 0; lineNum < numLines && lineStart < this.fontText.length(); lineNum++) {
+            int lineEnd = this.lineEnd(lineStart);
+            if (lineEnd == this.fontText.length())
+                return lineEnd;
+            lineStart = lineEnd + 1;
+            if (this.fontText.charAt(lineEnd) == '\r' && lineStart < this.fontText.length() && this.fontText.charAt(lineStart) == '\n')
+                lineStart++;
         }
+        return lineStart;
+    }
+
+    //sets values[index], doubling values first when index is its length
+    private static int[] setGrowing(int[] values, int index, int value){
+        if (index == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[index] = value;
+        return values;
+    }
+
+    //loads a compiled font, the packed glyph arrays are read as they were written so nothing is parsed
+    //counts are checked against the bytes left, so truncated or corrupt files fail with FIGFontFormatException
+    private FIGFont(ByteBuffer compiledFont) throws IOException {
+        if (compiledFont.remaining() < 8 || compiledFont.getInt() != COMPILED_MAGIC || compiledFont.getInt() != COMPILED_VERSION)
+            throw new FIGFontFormatException("Unsupported compiled font version");
+        this.header = new FIGFontHeader(new String(readChars(compiledFont, readCount(compiledFont))));
+        this.layoutMask = this.header.getLayoutMask();
+
+        int glyphCount = readCount(compiledFont);
+        long lineCount = (long)glyphCount * this.header.characterHeight;
+        if (lineCount > Integer.MAX_VALUE)
+            throw new FIGFontFormatException("Compiled font is corrupt, too many glyph lines: " + lineCount);
+        int[] widths = readInts(compiledFont, glyphCount);
+        int[] leftSpaces = readInts(compiledFont, (int)lineCount);
+        int[] rightSpaces = readInts(compiledFont, (int)lineCount);
+        int[] contentLengths = readInts(compiledFont, (int)lineCount);
+        char[] content = readChars(compiledFont, readCount(compiledFont));
+        long totalContentLength = 0;
+        for (int contentLength : contentLengths) {
+            if (contentLength < 0)
+                throw new FIGFontFormatException("Compiled font is corrupt, negative glyph line length: " + contentLength);
+            totalContentLength += contentLength;
+        }
+        if (totalContentLength > content.length)
+            throw new FIGFontFormatException("Compiled font is corrupt, glyph lines overrun their content");
+        this.glyphs = new GlyphStore(this.header.characterHeight, widths, leftSpaces, rightSpaces, contentLengths, content);
+
+        int codeCount = readCount(compiledFont);
+        int[] codes = readInts(compiledFont, codeCount);
+        int[] glyphIds = readInts(compiledFont, codeCount);
+        for (int codeIndex = 0; codeIndex < codeCount; codeIndex++) {
+            if (glyphIds[codeIndex] < 0 || glyphIds[codeIndex] >= glyphCount)
+                throw new FIGFontFormatException("Compiled font is corrupt, glyph id out of range: " + glyphIds[codeIndex]);
+            this.glyphIds.put(codes[codeIndex], glyphIds[codeIndex]);
+        }
+        this.fontText = null;
+        this.glyphOffsets = null;
+        this.FIGCharacters = new AtomicReferenceArray<>(glyphCount);
+        for (int glyphId = 0; glyphId < glyphCount; glyphId++)
+            this.FIGCharacters.set(glyphId, new FIGCharacter(this.glyphs, glyphId, pairIndexOf(glyphId)));
+    }
+
+    //glyph ids of the required characters are their indexes in the required list
+    //only the printable ASCII ones are covered by kerning tables
+    private static int pairIndexOf(int glyphId){
+        return glyphId < KerningTable.PAIR_RANGE ? glyphId : -1;
+    }
+
+    //writes the font in the compiled format read by FIGFont(ByteBuffer), only for fonts that weren't parsed lazily
+    void writeCompiled(DataOutputStream out) throws IOException {
+        if (this.glyphs == null)
+            throw new IllegalStateException("Lazily parsed fonts can't be compiled");
+        out.writeInt(COMPILED_MAGIC);
+        out.writeInt(COMPILED_VERSION);
+        out.writeInt(this.header.headerLine.length());
+        out.writeChars(this.header.headerLine);
+
+        out.writeInt(this.glyphs.getGlyphCount());
+        writeInts(out, this.glyphs.widths);
+        writeInts(out, this.glyphs.leftSpaces);
+        writeInts(out, this.glyphs.rightSpaces);
+        writeInts(out, this.glyphs.contentLengths);
+        out.writeInt(this.glyphs.content.length);
+        for (char subCharacter : this.glyphs.content)
+            out.writeChar(subCharacter);
+
+        int[] codePoints = this.glyphIds.getCodePoints();
+        out.writeInt(codePoints.length);
+        writeInts(out, codePoints);
+        for (int codePoint : codePoints)
+            out.writeInt(this.glyphIds.get(codePoint));
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values)
+            out.writeInt(value);
+    }
+
+    private static int readCount(ByteBuffer buffer) throws FIGFontFormatException {
+        checkRemaining(buffer, 1, 4);
+        int count = buffer.getInt();
+        if (count < 0)
+            throw new FIGFontFormatException("Compiled font is corrupt, negative count: " + count);
+        return count;
+    }
+
+    private static void checkRemaining(ByteBuffer buffer, int count, int valueBytes) throws FIGFontFormatException {
+        if (count > buffer.remaining() / valueBytes)
+            throw new FIGFontFormatException("Compiled font is truncated at byte " + buffer.position());
     }
 
-    private char extractCharFromCodeTag(String codeTag) {
+    private static int[] readInts(ByteBuffer buffer, int count) throws FIGFontFormatException {
+        checkRemaining(buffer, count, 4);
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static char[] readChars(ByteBuffer buffer, int count) throws FIGFontFormatException {
+        checkRemaining(buffer, count, 2);
+        char[] values = new char[count];
+        buffer.asCharBuffer().get(values);
+        buffer.position(buffer.position() + count * 2);
+        return values;
+    }
+
+    //code tags can be above U+FFFF, negative codes are reserved by figlet and never match input
+    private int extractCodeFromCodeTag(String codeTag) throws FIGFontFormatException {
         //CODE_TAG_PATTERN info:
         //group1:optional negative char, group2:optional octal/hex modifier, group3:required digits, group4:optional comments
         //example: (-)(0x)(123)  (A blah blah char)
@@ -81,25 +369,30 @@ class FIGFont {
             String digits = m.group(3);
 
             int charCode;
-            if (baseIndicator == null) { //decimal
-                charCode = Integer.parseInt(digits);
-            } else if (baseIndicator.equals("0")){ //octal
-                charCode = Integer.parseInt(digits, 8);
-            } else if (baseIndicator.toUpperCase().equals("0X")){
-                charCode = Integer.parseInt(digits, 16);
-            } else {
-                throw new RuntimeException("Invalid code tag format");
+            try {
+                if (baseIndicator == null) { //decimal
+                    charCode = Integer.parseInt(digits);
+                } else if (baseIndicator.equals("0")){ //octal
+                    charCode = Integer.parseInt(digits, 8);
+                } else if (baseIndicator.toUpperCase().equals("0X")){
+                    charCode = Integer.parseInt(digits, 16);
+                } else {
+                    throw new FIGFontFormatException("Invalid code tag format: " + codeTag);
+                }
+            } catch (NumberFormatException e) {
+                throw new FIGFontFormatException("Invalid code tag format: " + codeTag, e);
             }
             if (isNegative)
                 charCode*=-1;
 
-            return (char)charCode;
+            return charCode;
         }else{
-            throw new RuntimeException("Invalid code tag format");
+            throw new FIGFontFormatException("Invalid code tag format: " + codeTag);
         }
     }
 
     private class FIGFontHeader {
+        private final String headerLine; //kept so compiled fonts can reparse it
         private final String signature; //helps determine version
         private final char hardBlank; //special whitespace char that can't be kerned/smushed
         private final int characterHeight; //height of characters
@@ -113,24 +406,41 @@ class FIGFont {
         //extract font information from header line
         //format:
         //[str signature][char hard blank] [num height] [num baseline] [num max length] [num old layout] [num comment lines] [bit print direction] [num full layout] [num codetag count]
-        private FIGFontHeader(String headerLine){
+        private FIGFontHeader(String headerLine) throws FIGFontFormatException {
+            if (headerLine == null)
+                throw new FIGFontFormatException("Font is empty");
+            this.headerLine = headerLine;
             Scanner headerScanner = new Scanner(headerLine);
-            String firstItem = headerScanner.next();
-            int endCharIndex = firstItem.length()-1;
-            this.hardBlank = firstItem.charAt(endCharIndex);
-            this.signature = firstItem.substring(0, endCharIndex); //first item without last char
-            this.characterHeight = headerScanner.nextInt();
-            this.baseline = headerScanner.nextInt();
-            this.maxLength = headerScanner.nextInt();
-            this.oldLayoutMask = headerScanner.nextInt();
-            this.numCommentLines = headerScanner.nextInt();
-            this.printRightToLeft = headerScanner.hasNextInt()
-                    ? Option.of(headerScanner.nextInt() == 1)
-                    : Option.empty();
-            this.fullLayoutMask = printRightToLeft.isPresent() && headerScanner.hasNextInt()
-                    ? Option.of(headerScanner.nextInt())
-                    : Option.empty();
+            try {
+                String firstItem = headerScanner.next();
+                int endCharIndex = firstItem.length()-1;
+                this.hardBlank = firstItem.charAt(endCharIndex);
+                this.signature = firstItem.substring(0, endCharIndex); //first item without last char
+                if (!this.signature.startsWith("flf2") && !this.signature.startsWith("tlf2"))
+                    throw new FIGFontFormatException("Not a FIGfont or TOIlet font, unknown signature: " + this.signature);
+                this.characterHeight = headerScanner.nextInt();
+                if (this.characterHeight < 1)
+                    throw new FIGFontFormatException("Invalid character height: " + this.characterHeight);
+                this.baseline = headerScanner.nextInt();
+                this.maxLength = headerScanner.nextInt();
+                this.oldLayoutMask = headerScanner.nextInt();
+                this.numCommentLines = headerScanner.nextInt();
+                this.printRightToLeft = headerScanner.hasNextInt()
+                        ? Option.of(headerScanner.nextInt() == 1)
+                        : Option.empty();
+                this.fullLayoutMask = printRightToLeft.isPresent() && headerScanner.hasNextInt()
+                        ? Option.of(headerScanner.nextInt())
+                        : Option.empty();
+            } catch (NoSuchElementException e) { //also thrown for non numeric values
+                throw new FIGFontFormatException("Invalid header: " + headerLine, e);
+            }
             //skip parsing for code tag count, not necessary for parsing font file
         }
+
+        private int getLayoutMask(){
+            return this.fullLayoutMask.isPresent()
+                ? this.fullLayoutMask.get()
+                : Layout.fullMaskFromOldMask(this.oldLayoutMask);
+        }
     }
 }
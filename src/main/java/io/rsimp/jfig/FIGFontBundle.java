@@ -0,0 +1,236 @@
+package io.rsimp.jfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Every font in a directory or jar, parsed in parallel and indexed by name.
+ * <p>
+ * Fonts are the .flf, .tlf and compiled .flc files directly inside the location, named by their file name without the
+ * extension. When two files share a name the first in file name order is loaded. A font that fails to load is reported
+ * through {@link #getFailures()} and doesn't stop the others from loading.
+ * </p>
+ */
+public final class FIGFontBundle {
+    private static final List<String> FONT_EXTENSIONS = Arrays.asList(".flf", ".tlf", ".flc");
+
+    private final Map<String, FontLoad> loads; //by name, in name order
+    private final Map<String, FIGRenderer> fonts;
+    private final long elapsedNanos;
+
+    private FIGFontBundle(Map<String, FontLoad> loads, long elapsedNanos){
+        this.loads = Collections.unmodifiableMap(loads);
+        Map<String, FIGRenderer> fonts = new TreeMap<>();
+        for (FontLoad load : loads.values())
+            if (load.isLoaded())
+                fonts.put(load.getName(), load.getRenderer());
+        this.fonts = Collections.unmodifiableMap(fonts);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Loads every font in a directory, subdirectories aren't searched
+     *
+     * @param directory
+     * @param executor runs one task per font, for example a fixed thread pool or a ForkJoinPool, it isn't shut down
+     * @throws IOException if the directory can't be listed, failures of single fonts are reported by the bundle instead
+     * @throws InterruptedException if interrupted while waiting for the fonts, loads that haven't started are cancelled
+     */
+    public static FIGFontBundle load(File directory, Executor executor) throws IOException, InterruptedException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Not a readable directory: " + directory);
+        Arrays.sort(files);
+
+        Map<String, FIGFontRegistry.FontLoader> loaders = new LinkedHashMap<>();
+        for (final File file : files) {
+            String name = fontName(file.getName());
+            if (name != null && file.isFile() && !loaders.containsKey(name))
+                loaders.put(name, () -> new FIGRenderer(file));
+        }
+        return load(loaders, executor);
+    }
+
+    /**
+     * Loads every font in a directory given as a file: URL or in a jar directory given as a jar: URL,
+     * for example the result of {@code getClass().getResource("/fonts/")}
+     *
+     * @param location
+     * @param executor runs one task per font, for example a fixed thread pool or a ForkJoinPool, it isn't shut down
+     * @throws IOException if the location can't be listed, failures of single fonts are reported by the bundle instead
+     * @throws InterruptedException if interrupted while waiting for the fonts, loads that haven't started are cancelled
+     */
+    public static FIGFontBundle load(URL location, Executor executor) throws IOException, InterruptedException {
+        if ("file".equals(location.getProtocol())) {
+            try {
+                return load(new File(location.toURI()), executor);
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid font bundle location: " + location, e);
+            }
+        }
+        if (!"jar".equals(location.getProtocol()))
+            throw new IOException("Unsupported font bundle location: " + location);
+
+        JarURLConnection connection = (JarURLConnection)location.openConnection();
+        String directory = connection.getEntryName() == null ? "" : connection.getEntryName();
+        if (!directory.isEmpty() && !directory.endsWith("/"))
+            directory += "/";
+        //open the jar through its root, jars don't always have entries for their directories
+        JarURLConnection jarConnection = (JarURLConnection)new URL("jar:" + connection.getJarFileURL() + "!/").openConnection();
+        jarConnection.setUseCaches(false); //the jar file is closed once loaded, it must not be shared
+        try (final JarFile jar = jarConnection.getJarFile()) {
+            List<JarEntry> entries = new ArrayList<>();
+            for (Enumeration<JarEntry> jarEntries = jar.entries(); jarEntries.hasMoreElements(); ) {
+                JarEntry entry = jarEntries.nextElement();
+                String path = entry.getName();
+                if (!entry.isDirectory() && path.startsWith(directory) && path.indexOf('/', directory.length()) < 0)
+                    entries.add(entry);
+            }
+            Collections.sort(entries, (first, second) -> first.getName().compareTo(second.getName()));
+
+            Map<String, FIGFontRegistry.FontLoader> loaders = new LinkedHashMap<>();
+            for (final JarEntry entry : entries) {
+                String name = fontName(entry.getName().substring(directory.length()));
+                if (name != null && !loaders.containsKey(name))
+                    loaders.put(name, () -> new FIGRenderer(jar.getInputStream(entry)));
+            }
+            return load(loaders, executor); //no load is running when the jar is closed, even if interrupted
+        }
+    }
+
+    //returns once every load is done or, when interrupted, once no load is running and none will start
+    private static FIGFontBundle load(Map<String, FIGFontRegistry.FontLoader> loaders, Executor executor) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        //loads hold the read lock, the write lock is taken for good when the bundle is abandoned
+        final ReadWriteLock abandoned = new ReentrantReadWriteLock();
+        Map<String, FutureTask<FontLoad>> tasks = new LinkedHashMap<>();
+        for (final Map.Entry<String, FIGFontRegistry.FontLoader> loader : loaders.entrySet()) {
+            FutureTask<FontLoad> task = new FutureTask<>(() -> {
+                if (!abandoned.readLock().tryLock())
+                    return null;
+                long loadStartNanos = System.nanoTime();
+                try {
+                    FIGRenderer renderer = loader.getValue().load();
+                    return new FontLoad(loader.getKey(), renderer, null, System.nanoTime() - loadStartNanos);
+                } catch (IOException | RuntimeException e) {
+                    return new FontLoad(loader.getKey(), null, e, System.nanoTime() - loadStartNanos);
+                } finally {
+                    abandoned.readLock().unlock();
+                }
+            });
+            tasks.put(loader.getKey(), task);
+            executor.execute(task);
+        }
+
+        Map<String, FontLoad> loads = new TreeMap<>();
+        for (Map.Entry<String, FutureTask<FontLoad>> task : tasks.entrySet()) {
+            try {
+                loads.put(task.getKey(), task.getValue().get());
+            } catch (InterruptedException e) {
+                for (FutureTask<FontLoad> otherTask : tasks.values())
+                    otherTask.cancel(false);
+                abandoned.writeLock().lock(); //waits out running loads, a jar must not be closed under them
+                throw e;
+            } catch (ExecutionException e) {
+                throw (Error)e.getCause(); //load tasks catch everything else
+            }
+        }
+        return new FIGFontBundle(loads, System.nanoTime() - startNanos);
+    }
+
+    //file name without its font extension, null if it isn't a font file
+    private static String fontName(String fileName){
+        int extensionStart = fileName.lastIndexOf('.');
+        if (extensionStart <= 0 || !FONT_EXTENSIONS.contains(fileName.substring(extensionStart).toLowerCase()))
+            return null;
+        return fileName.substring(0, extensionStart);
+    }
+
+    /**
+     * @param name font file name without extension
+     * @return the font, or null if there is no such font or it failed to load
+     */
+    public FIGRenderer get(String name){ return this.fonts.get(name); }
+
+    /**
+     * @return every font that loaded, by name in name order
+     */
+    public Map<String, FIGRenderer> getFonts(){ return this.fonts; }
+
+    /**
+     * @return the outcome of every font found, loaded or not, in name order
+     */
+    public Collection<FontLoad> getLoads(){ return this.loads.values(); }
+
+    /**
+     * @return the fonts that failed to load, in name order
+     */
+    public List<FontLoad> getFailures(){
+        List<FontLoad> failures = new ArrayList<>();
+        for (FontLoad load : this.loads.values())
+            if (!load.isLoaded())
+                failures.add(load);
+        return failures;
+    }
+
+    /**
+     * @return wall clock time taken to load the whole bundle
+     */
+    public long getElapsedTime(TimeUnit unit){ return unit.convert(this.elapsedNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Outcome of loading one font of a bundle
+     */
+    public static final class FontLoad {
+        private final String name;
+        private final FIGRenderer renderer;
+        private final Exception failure;
+        private final long loadNanos;
+
+        private FontLoad(String name, FIGRenderer renderer, Exception failure, long loadNanos){
+            this.name = name;
+            this.renderer = renderer;
+            this.failure = failure;
+            this.loadNanos = loadNanos;
+        }
+
+        public String getName(){ return this.name; }
+
+        public boolean isLoaded(){ return this.failure == null; }
+
+        /**
+         * @return the font, null if it failed to load
+         */
+        public FIGRenderer getRenderer(){ return this.renderer; }
+
+        /**
+         * @return why the font failed to load, usually a {@link FIGFontFormatException}, null if it loaded
+         */
+        public Exception getFailure(){ return this.failure; }
+
+        /**
+         * @return time taken to read and parse the font
+         */
+        public long getLoadTime(TimeUnit unit){ return unit.convert(this.loadNanos, TimeUnit.NANOSECONDS); }
+    }
+}
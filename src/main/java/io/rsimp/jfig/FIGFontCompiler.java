@@ -0,0 +1,59 @@
+package io.rsimp.jfig;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts text FIGfonts into a compact binary format that loads without parsing.
+ * <p>
+ * Compiled fonts store the header line and every glyph line already split into left spaces, content and right spaces.
+ * They are accepted anywhere a text font is, {@link FIGRenderer#FIGRenderer(File)} reads them in one pass.
+ * </p>
+ * <p>
+ * Usage: {@code java io.rsimp.jfig.FIGFontCompiler <font.flf> <font.flc>}
+ * </p>
+ */
+public final class FIGFontCompiler {
+    private FIGFontCompiler(){}
+
+    /**
+     * Compiles a text font file into a compiled font file
+     *
+     * @param figfont
+     * @param compiledFont file to write, replaced when it exists
+     * @throws IOException
+     */
+    public static void compile(File figfont, File compiledFont) throws IOException {
+        try (OutputStream out = new FileOutputStream(compiledFont)) {
+            compile(new FileInputStream(figfont), out);
+        }
+    }
+
+    /**
+     * Compiles a text font stream, figfont is closed but out is only flushed
+     *
+     * @param figfont
+     * @param out
+     * @throws IOException
+     */
+    public static void compile(InputStream figfont, OutputStream out) throws IOException {
+        FIGFont font = new FIGFont(figfont);
+        DataOutputStream compiledOut = new DataOutputStream(new BufferedOutputStream(out));
+        font.writeCompiled(compiledOut);
+        compiledOut.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FIGFontCompiler <font.flf> <font.flc>");
+            System.exit(2);
+        }
+        compile(new File(args[0]), new File(args[1]));
+    }
+}
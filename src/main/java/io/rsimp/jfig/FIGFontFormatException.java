@@ -0,0 +1,18 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a font can't be parsed because it doesn't follow the FIGfont format.
+ */
+public class FIGFontFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public FIGFontFormatException(String message){
+        super(message);
+    }
+
+    public FIGFontFormatException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,244 @@
+package io.rsimp.jfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache of parsed fonts, keyed by file path, URL or a caller chosen name.
+ * <p>
+ * Fonts are loaded lazily on first request. Concurrent requests for a font that is still loading wait for that
+ * single load instead of parsing it again. Once more than {@code maxFonts} fonts are cached the least recently
+ * used font is evicted, renderers already handed out keep working.
+ * </p>
+ */
+public class FIGFontRegistry {
+    private static final int DEFAULT_MAX_FONTS = 512;
+    private static final FIGFontRegistry GLOBAL = new FIGFontRegistry(DEFAULT_MAX_FONTS);
+
+    private final Map<String, FutureTask<FIGRenderer>> fonts;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+
+    /**
+     * @return registry shared by the whole JVM, caching up to 512 fonts
+     */
+    public static FIGFontRegistry getGlobal(){ return GLOBAL; }
+
+    /**
+     * @param maxFonts maximum number of fonts kept before the least recently used one is evicted
+     */
+    public FIGFontRegistry(int maxFonts){
+        if (maxFonts < 1)
+            throw new IllegalArgumentException("maxFonts must be at least 1");
+        this.fonts = new LeastRecentlyUsedFonts(maxFonts, this.evictions);
+    }
+
+    /**
+     * Gets the font in a file, loading it on first use
+     *
+     * @param figfont
+     * @throws IOException
+     */
+    public FIGRenderer get(File figfont) throws IOException {
+        //keyed by URL so a file and its file: URL share one cache entry
+        return this.get(figfont.getCanonicalFile().toURI().toURL().toExternalForm(), () -> new FIGRenderer(figfont));
+    }
+
+    /**
+     * Gets the font at a URL, loading it on first use
+     *
+     * @param figfontURL
+     * @throws IOException
+     */
+    public FIGRenderer get(URL figfontURL) throws IOException {
+        return this.get(figfontURL.toExternalForm(), () -> new FIGRenderer(figfontURL));
+    }
+
+    /**
+     * Gets the font cached under a name, calling the loader if it isn't cached yet
+     *
+     * @param name key the font is cached under
+     * @param loader called at most once at a time per name
+     * @throws IOException if the loader failed, the failure isn't cached
+     */
+    public FIGRenderer get(String name, FontLoader loader) throws IOException {
+        FutureTask<FIGRenderer> font;
+        boolean isLoader = false;
+        synchronized (this.fonts) {
+            font = this.fonts.get(name);
+            if (font == null) {
+                font = new FutureTask<>(() -> {
+                    long loadStart = System.nanoTime();
+                    try {
+                        return loader.load();
+                    } finally {
+                        this.totalLoadNanos.addAndGet(System.nanoTime() - loadStart);
+                    }
+                });
+                this.fonts.put(name, font);
+                isLoader = true;
+            }
+        }
+
+        if (isLoader) {
+            this.misses.incrementAndGet();
+            font.run(); //load on the calling thread, other callers wait on the same task
+        } else {
+            this.hits.incrementAndGet();
+        }
+
+        try {
+            return font.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for font " + name);
+        } catch (ExecutionException e) {
+            if (isLoader) {
+                this.loadFailures.incrementAndGet();
+                this.remove(name, font);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException("Failed to load font " + name, cause);
+        }
+    }
+
+    /**
+     * Removes a font from the registry, it will be reloaded on the next request
+     *
+     * @param name
+     */
+    public void invalidate(String name){
+        synchronized (this.fonts) {
+            this.fonts.remove(name);
+        }
+    }
+
+    /**
+     * Removes every font from the registry
+     */
+    public void clear(){
+        synchronized (this.fonts) {
+            this.fonts.clear();
+        }
+    }
+
+    /**
+     * @return number of cached fonts, including fonts still loading
+     */
+    public int size(){
+        synchronized (this.fonts) {
+            return this.fonts.size();
+        }
+    }
+
+    /**
+     * @return snapshot of the registry counters
+     */
+    public Stats getStats(){
+        return new Stats(
+            this.hits.get(),
+            this.misses.get(),
+            this.loadFailures.get(),
+            this.evictions.get(),
+            this.totalLoadNanos.get()
+        );
+    }
+
+    //only removes the entry if it wasn't already replaced by a newer load
+    private void remove(String name, FutureTask<FIGRenderer> font){
+        synchronized (this.fonts) {
+            if (this.fonts.get(name) == font)
+                this.fonts.remove(name);
+        }
+    }
+
+    /**
+     * Loads a font for {@link #get(String, FontLoader)}
+     */
+    public interface FontLoader {
+        FIGRenderer load() throws IOException;
+    }
+
+    /**
+     * Point in time copy of the registry counters
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadFailureCount;
+        private final long evictionCount;
+        private final long totalLoadNanos;
+
+        private Stats(long hitCount, long missCount, long loadFailureCount, long evictionCount, long totalLoadNanos){
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadFailureCount = loadFailureCount;
+            this.evictionCount = evictionCount;
+            this.totalLoadNanos = totalLoadNanos;
+        }
+
+        /**
+         * @return requests served by an already cached or loading font
+         */
+        public long getHitCount(){ return this.hitCount; }
+
+        /**
+         * @return requests that had to load the font, including failed loads
+         */
+        public long getMissCount(){ return this.missCount; }
+
+        public long getLoadFailureCount(){ return this.loadFailureCount; }
+
+        public long getEvictionCount(){ return this.evictionCount; }
+
+        /**
+         * @return time spent loading fonts, summed over every load
+         */
+        public long getTotalLoadTime(TimeUnit unit){ return unit.convert(this.totalLoadNanos, TimeUnit.NANOSECONDS); }
+
+        public double getHitRate(){
+            long requestCount = this.hitCount + this.missCount;
+            return requestCount == 0 ? 0 : (double)this.hitCount / requestCount;
+        }
+    }
+
+    //access ordered map evicting the least recently used font once it holds more than maxFonts
+    private static final class LeastRecentlyUsedFonts extends LinkedHashMap<String, FutureTask<FIGRenderer>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxFonts;
+        private final AtomicLong evictions;
+
+        private LeastRecentlyUsedFonts(int maxFonts, AtomicLong evictions){
+            super(16, 0.75f, true);
+            this.maxFonts = maxFonts;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FutureTask<FIGRenderer>> eldest){
+            if (this.size() <= this.maxFonts)
+                return false;
+            this.evictions.incrementAndGet();
+            return true;
+        }
+    }
+}
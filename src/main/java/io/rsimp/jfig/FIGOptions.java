@@ -0,0 +1,239 @@
+package io.rsimp.jfig;
+
+/**
+ * Immutable per call render options for a {@link FIGRenderer}: layout mask, print direction, line prefix, width, fallback character
+ * and how output lines are justified, trimmed and framed.
+ * <p>
+ * Options are cheap to create and safe to share between threads. Every {@code with} method returns a modified copy,
+ * start from {@link FIGRenderer#getDefaultOptions()} to get the font's own layout and print direction.
+ * </p>
+ */
+public final class FIGOptions {
+    private static final int HORIZONTAL_RULES = 1 + 2 + 4 + 8 + 16 + 32;
+    private static final int HORIZONTAL_FITTING = 64;
+    private static final int HORIZONTAL_SMUSHING = 128;
+    static final char NO_BORDER = 0;
+    private static final int BORDER_WIDTH = 4; //border and a space on each side
+
+    private final int layoutMask;
+    private final boolean printRightToLeft;
+    private final String prefix;
+    private final int width;
+    private final int fallbackCodePoint;
+    private final Justification justification;
+    private final boolean trimTrailingSpaces;
+    private final char border;
+
+    /**
+     * Where output lines are placed within the output width, see {@link #withJustification(Justification)}
+     */
+    public enum Justification {
+        /** left for left to right printing, right for right to left, like figlet's -x */
+        AUTO,
+        LEFT,
+        CENTER,
+        RIGHT
+    }
+
+    FIGOptions(int layoutMask, boolean printRightToLeft, String prefix, int width, int fallbackCodePoint,
+               Justification justification, boolean trimTrailingSpaces, char border){
+        this.layoutMask = layoutMask;
+        this.printRightToLeft = printRightToLeft;
+        this.prefix = prefix;
+        this.width = width;
+        this.fallbackCodePoint = fallbackCodePoint;
+        this.justification = justification;
+        this.trimTrailingSpaces = trimTrailingSpaces;
+        this.border = border;
+    }
+
+    /**
+     * @return full layout mask, see http://www.jave.de/figlet/figfont.html#layoutparameters
+     */
+    public int getLayoutMask(){ return this.layoutMask; }
+
+    public boolean getPrintRightToLeft(){ return this.printRightToLeft; }
+
+    public String getPrefix(){ return this.prefix; }
+
+    /**
+     * @return maximum output width in columns including the prefix, 0 if rows are never wrapped
+     */
+    public int getWidth(){ return this.width; }
+
+    /**
+     * @return code point rendered in place of characters missing from the font, 0 by default
+     */
+    public int getFallbackCodePoint(){ return this.fallbackCodePoint; }
+
+    public Justification getJustification(){ return this.justification; }
+
+    public boolean getTrimTrailingSpaces(){ return this.trimTrailingSpaces; }
+
+    /**
+     * @return sub-character the output is framed with, 0 if it isn't framed
+     */
+    public char getBorder(){ return this.border; }
+
+    //columns the border takes from the output width
+    int getBorderWidth(){ return this.border == NO_BORDER ? 0 : BORDER_WIDTH; }
+
+    /**
+     * Copy using the given full layout mask
+     *
+     * @param layoutMask
+     */
+    public FIGOptions withLayout(int layoutMask){
+        return new FIGOptions(layoutMask, this.printRightToLeft, this.prefix, this.width, this.fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy using a layout mask in the older format
+     *
+     * @param oldLayoutMask
+     */
+    public FIGOptions withOldLayout(int oldLayoutMask){
+        return this.withLayout(Layout.fullMaskFromOldMask(oldLayoutMask));
+    }
+
+    /**
+     * Copy with the horizontal layout mode set to use full width fig characters
+     */
+    public FIGOptions withFullWidthMode(){
+        return this.withLayout(this.layoutMask & ~(HORIZONTAL_FITTING | HORIZONTAL_SMUSHING));
+    }
+
+    /**
+     * Copy with the horizontal layout mode set to fit fig characters as closely together by removing overlapping whitespace
+     */
+    public FIGOptions withKerningMode(){
+        return this.withLayout(this.layoutMask & ~HORIZONTAL_SMUSHING | HORIZONTAL_FITTING);
+    }
+
+    /**
+     * Copy with the horizontal layout mode set to Universal Smushing
+     */
+    public FIGOptions withUniversalSmushing(){
+        return this.withLayout(this.layoutMask & ~(HORIZONTAL_RULES | HORIZONTAL_FITTING) | HORIZONTAL_SMUSHING);
+    }
+
+    /**
+     * Copy with the given print direction
+     *
+     * @param printRightToLeft
+     */
+    public FIGOptions withPrintRightToLeft(boolean printRightToLeft){
+        return new FIGOptions(this.layoutMask, printRightToLeft, this.prefix, this.width, this.fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy with the given prefix written at the start of every output line
+     *
+     * @param prefix
+     */
+    public FIGOptions withPrefix(String prefix){
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, prefix, this.width, this.fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy that wraps rows wider than width columns at word boundaries, like figlet's -w
+     * <p>
+     * Words longer than the width are broken between characters. A row always holds at least one character,
+     * even if that character alone is wider.
+     * </p>
+     *
+     * @param width maximum output width including the prefix, 0 to never wrap
+     */
+    public FIGOptions withWidth(int width){
+        if (width < 0)
+            throw new IllegalArgumentException("width can't be negative");
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, this.prefix, width, this.fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy that renders characters missing from the font with the FIGcharacter of fallbackCodePoint
+     * <p>
+     * By default this is code point 0, which figlet fonts use for their missing character glyph.
+     * Missing characters are skipped when the font has no FIGcharacter for the fallback either.
+     * </p>
+     *
+     * @param fallbackCodePoint
+     */
+    public FIGOptions withFallbackCodePoint(int fallbackCodePoint){
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, this.prefix, this.width, fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy that places output lines within the output width, like figlet's -l, -c, -r and -x
+     * <p>
+     * The output width is the width set by {@link #withWidth(int)} less the prefix and border, or the widest line when
+     * no width is set. Rows are justified one by one, rows stacked into each other by the vertical layout move together.
+     * </p>
+     *
+     * @param justification
+     */
+    public FIGOptions withJustification(Justification justification){
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, this.prefix, this.width, this.fallbackCodePoint,
+            justification, this.trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy that leaves out the spaces at the end of every output line, hard blanks included
+     * <p>
+     * Framed output is never trimmed, its right border keeps every line at the same width.
+     * </p>
+     *
+     * @param trimTrailingSpaces
+     */
+    public FIGOptions withTrimTrailingSpaces(boolean trimTrailingSpaces){
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, this.prefix, this.width, this.fallbackCodePoint,
+            this.justification, trimTrailingSpaces, this.border);
+    }
+
+    /**
+     * Copy that frames the output in a box drawn with border, lines are kept a space away from it
+     * <p>
+     * The frame goes after the prefix and counts towards the width set by {@link #withWidth(int)}.
+     * </p>
+     *
+     * @param border sub-character the frame is drawn with, 0 for no frame
+     */
+    public FIGOptions withBorder(char border){
+        return new FIGOptions(this.layoutMask, this.printRightToLeft, this.prefix, this.width, this.fallbackCodePoint,
+            this.justification, this.trimTrailingSpaces, border);
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if (this == other)
+            return true;
+        if (!(other instanceof FIGOptions))
+            return false;
+        FIGOptions otherOptions = (FIGOptions)other;
+        return this.layoutMask == otherOptions.layoutMask
+            && this.printRightToLeft == otherOptions.printRightToLeft
+            && this.width == otherOptions.width
+            && this.fallbackCodePoint == otherOptions.fallbackCodePoint
+            && this.justification == otherOptions.justification
+            && this.trimTrailingSpaces == otherOptions.trimTrailingSpaces
+            && this.border == otherOptions.border
+            && this.prefix.equals(otherOptions.prefix);
+    }
+
+    @Override
+    public int hashCode(){
+        int hash = this.layoutMask;
+        hash = 31 * hash + (this.printRightToLeft ? 1 : 0);
+        hash = 31 * hash + this.width;
+        hash = 31 * hash + this.fallbackCodePoint;
+        hash = 31 * hash + this.justification.hashCode();
+        hash = 31 * hash + (this.trimTrailingSpaces ? 1 : 0);
+        hash = 31 * hash + this.border;
+        return 31 * hash + this.prefix.hashCode();
+    }
+}
@@ -0,0 +1,74 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+
+/**
+ * Format FIGure output is written in, for example ANSI colored text or HTML.
+ * <p>
+ * Formats style output as it is written. Every sub-character is given a style and consecutive sub-characters with the
+ * same style are handed to the format as one run, so a format writes one escape sequence or tag per run instead of
+ * one per sub-character. Formats are used through
+ * {@link FIGRenderer#render(CharSequence, FIGOptions, FIGOutputFormat, Appendable)}.
+ * </p>
+ * <p>
+ * Implementations should be immutable and thread safe, per render state belongs in the {@link Output} returned by open.
+ * </p>
+ *
+ * @see AnsiOutputFormat
+ * @see HtmlOutputFormat
+ */
+public interface FIGOutputFormat {
+    /**
+     * Starts writing one FIGure
+     *
+     * @param out where the formatted output goes
+     * @param size size of the FIGure in sub-characters, not counting anything the format adds
+     * @param characterCount number of FIGcharacters in the FIGure
+     * @throws IOException if out fails
+     */
+    Output open(Appendable out, FIGSize size, int characterCount) throws IOException;
+
+    /**
+     * Writes the runs of one FIGure, lines are written top to bottom and runs left to right
+     */
+    interface Output {
+        /**
+         * Style that joins the run before it, for sub-characters such as spaces that look the same in any style
+         */
+        int SAME_STYLE = -1;
+
+        /**
+         * Styles a sub-character, hard blanks have already been replaced by spaces
+         *
+         * @param line output line, from 0
+         * @param column output column, from 0, the prefix included
+         * @param character index of the FIGcharacter the sub-character belongs to, -1 for the prefix, justification and frame
+         * @param subCharacter
+         * @return style id handed back to writeRun, or SAME_STYLE
+         */
+        int getStyle(int line, int column, int character, char subCharacter);
+
+        /**
+         * Writes a run of sub-characters that share a style
+         *
+         * @param style id returned by getStyle, SAME_STYLE when every sub-character of the run was SAME_STYLE
+         * @param subCharacters only valid during the call, the buffer is reused for the next run
+         * @throws IOException if out fails
+         */
+        void writeRun(int style, CharSequence subCharacters) throws IOException;
+
+        /**
+         * Ends the current line, there is always another line after it
+         *
+         * @throws IOException if out fails
+         */
+        void writeLineBreak() throws IOException;
+
+        /**
+         * Ends the FIGure, out isn't closed
+         *
+         * @throws IOException if out fails
+         */
+        void close() throws IOException;
+    }
+}
@@ -0,0 +1,419 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//rows of FIGures making up multi-line output, rows are kept after clear so their buffers can be reused
+class FIGParagraph {
+    private final int height;
+    private final ArrayList<FIGure> rows = new ArrayList<>();
+    private int rowCount;
+    private FIGOptions options;
+    private String prefix = "";
+    private char hardBlank;
+    private VerticalStacker verticalStacker;
+    private char[] outputBuffer = new char[0]; //reused by toString
+
+    //output lines laid out by prepare, one line at a time is loaded into the line fields
+    private List<VerticalStacker.StackedLine> stackedLines; //null when rows are written one after another at full height
+    private int lineCount;
+    private int stackWidth; //widest stacked line
+    private int contentWidth; //columns between the prefix, or the frame, and the line end that lines are justified in
+    private int loadedRow;
+    private CharSequence lineChars;
+    private int lineStart;
+    private int lineEnd;
+    private int lineTrailingSpaces;
+    private int lineBlockWidth; //width of the row or stack the line is justified with
+    private int lineRowIndex;
+
+    //scratch marks for word wrapping
+    final FIGure.Mark characterMark;
+    final FIGure.Mark spaceMark;
+    final FIGure.Mark rowMark; //empty row, right to left rows are laid out again from it
+
+    FIGParagraph(int height){
+        this.height = height;
+        this.characterMark = new FIGure.Mark(height);
+        this.spaceMark = new FIGure.Mark(height);
+        this.rowMark = new FIGure.Mark(height);
+    }
+
+    //starts a new paragraph written with options, rows are stacked by verticalStacker, null stacks them at full height
+    void clear(FIGOptions options, char hardBlank, VerticalStacker verticalStacker){
+        this.rowCount = 0;
+        this.options = options;
+        this.prefix = options.getPrefix();
+        this.hardBlank = hardBlank;
+        this.verticalStacker = verticalStacker;
+    }
+
+    FIGure addRow(){
+        FIGure row;
+        if (this.rowCount < this.rows.size()) {
+            row = this.rows.get(this.rowCount);
+            row.restart(this.prefix);
+        } else {
+            row = new FIGure(this.height, this.prefix);
+            this.rows.add(row);
+        }
+        this.rowCount++;
+        return row;
+    }
+
+    //drops the last row, its buffers are kept for reuse
+    void removeLastRow(){ this.rowCount--; }
+
+    int getRowCount(){ return this.rowCount; }
+
+    FIGure getRow(int rowIndex){ return this.rows.get(rowIndex); }
+
+    //measures the output without writing it, vertically stacked rows are stacked to find their overlap
+    FIGSize measure(){
+        this.prepare();
+        return this.getPreparedSize();
+    }
+
+    //renders into a char array of exactly the output length, kept and reused by later calls
+    @Override
+    public String toString(){
+        this.prepare();
+        int outputLength = this.getOutputLineCount() - 1; //newlines between lines
+        if (this.isFramed())
+            outputLength += 2 * this.getFrameLineLength();
+        for (int lineIndex = 0; lineIndex < this.lineCount; lineIndex++)
+            outputLength += this.getLineLength(lineIndex);
+        if (this.outputBuffer.length < outputLength)
+            this.outputBuffer = new char[outputLength];
+
+        CharArraySink sink = new CharArraySink(this.outputBuffer, this.hardBlank);
+        try {
+            this.write(sink);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //char arrays never throw
+        }
+        return new String(this.outputBuffer, 0, sink.length);
+    }
+
+    //writes lines separated by newlines, rows overlap when the vertical layout fits or smushes them, hard blanks become spaces
+    void writeTo(Appendable out) throws IOException {
+        this.prepare();
+        this.write(new AppendableSink(out, this.hardBlank));
+    }
+
+    //writes the output in format, the size handed to the format is the size of the unformatted output
+    void writeTo(Appendable out, FIGOutputFormat format) throws IOException {
+        this.prepare();
+        FIGSize size = this.getPreparedSize();
+        int characterCount = 0;
+        for (int rowIndex = 0; rowIndex < this.rowCount; rowIndex++)
+            characterCount += this.rows.get(rowIndex).getCharacterCount();
+        FormattedSink sink = new FormattedSink(format.open(out, size, characterCount));
+        this.write(sink);
+        sink.close();
+    }
+
+    private FIGSize getPreparedSize(){
+        int width = this.isFramed() ? this.getFrameLineLength() : 0;
+        for (int lineIndex = 0; lineIndex < this.lineCount; lineIndex++)
+            width = Math.max(width, this.getLineLength(lineIndex));
+        return new FIGSize(width, this.getOutputLineCount());
+    }
+
+    //lays out output lines for measure and write, alignment and framing are applied as lines are written
+    private void prepare(){
+        this.stackedLines = this.stack();
+        int widestLine = 0;
+        if (this.stackedLines != null) {
+            this.lineCount = this.stackedLines.size();
+            for (VerticalStacker.StackedLine stackedLine : this.stackedLines)
+                widestLine = Math.max(widestLine, stackedLine.chars.length());
+        } else {
+            this.lineCount = this.rowCount * this.height;
+            for (int rowIndex = 0; rowIndex < this.rowCount; rowIndex++)
+                widestLine = Math.max(widestLine, this.rows.get(rowIndex).getWidth() - this.prefix.length());
+        }
+        this.stackWidth = widestLine;
+        int width = this.options.getWidth();
+        int availableWidth = width > 0 ? width - this.prefix.length() - this.options.getBorderWidth() : 0;
+        this.contentWidth = Math.max(widestLine, availableWidth); //lines wider than the width are never cut
+        this.loadedRow = -1;
+    }
+
+    //lines of the rows stacked by the vertical layout, null when rows are written one after another at full height
+    private List<VerticalStacker.StackedLine> stack(){
+        if (this.rowCount > 1 && this.verticalStacker != null && this.verticalStacker.getMode() != LayoutMode.FULL_SIZE)
+            return this.verticalStacker.stack(this.rows, this.rowCount, this.prefix.length());
+        return null;
+    }
+
+    private void write(OutputSink out) throws IOException {
+        boolean isFramed = this.isFramed();
+        if (isFramed)
+            this.writeFrameLine(out);
+        for (int lineIndex = 0; lineIndex < this.lineCount; lineIndex++) {
+            if (lineIndex > 0 || isFramed)
+                out.append('\n');
+            this.writeLine(out, lineIndex);
+        }
+        if (isFramed) {
+            out.append('\n');
+            this.writeFrameLine(out);
+        }
+    }
+
+    private void writeLine(OutputSink out, int lineIndex) throws IOException {
+        this.loadLine(lineIndex);
+        out.append(this.prefix, 0, this.prefix.length());
+        boolean isFramed = this.isFramed();
+        if (isFramed) {
+            out.append(this.options.getBorder());
+            out.append(' ');
+        }
+        int end = this.getVisibleEnd();
+        if (end == this.lineStart && this.isTrimmed())
+            return; //blank line, trimmed down to the prefix
+        int padding = this.getPadding();
+        out.appendRepeated(' ', padding);
+        out.startCharacters(this.lineRowIndex, this.prefix.length());
+        out.append(this.lineChars, this.lineStart, end);
+        if (!this.isTrimmed())
+            out.appendRepeated(' ', this.lineTrailingSpaces);
+        out.endCharacters();
+        if (isFramed) {
+            out.appendRepeated(' ', this.contentWidth - padding - (end - this.lineStart) - this.lineTrailingSpaces);
+            out.append(' ');
+            out.append(this.options.getBorder());
+        }
+    }
+
+    private void writeFrameLine(OutputSink out) throws IOException {
+        out.append(this.prefix, 0, this.prefix.length());
+        out.appendRepeated(this.options.getBorder(), this.contentWidth + this.options.getBorderWidth());
+    }
+
+    //length of what writeLine writes
+    private int getLineLength(int lineIndex){
+        this.loadLine(lineIndex);
+        if (this.isFramed())
+            return this.getFrameLineLength();
+        int end = this.getVisibleEnd();
+        if (this.isTrimmed())
+            return this.prefix.length() + (end == this.lineStart ? 0 : this.getPadding() + end - this.lineStart);
+        return this.prefix.length() + this.getPadding() + end - this.lineStart + this.lineTrailingSpaces;
+    }
+
+    private int getFrameLineLength(){ return this.prefix.length() + this.contentWidth + this.options.getBorderWidth(); }
+
+    private int getOutputLineCount(){ return this.lineCount + (this.isFramed() ? 2 : 0); }
+
+    private boolean isFramed(){ return this.options.getBorder() != FIGOptions.NO_BORDER; }
+
+    private boolean isTrimmed(){ return this.options.getTrimTrailingSpaces() && !this.isFramed(); }
+
+    //end of the loaded line's chars, less trailing spaces and hard blanks when lines are trimmed
+    private int getVisibleEnd(){
+        int end = this.lineEnd;
+        if (this.isTrimmed())
+            while (end > this.lineStart && (this.lineChars.charAt(end - 1) == ' ' || this.lineChars.charAt(end - 1) == this.hardBlank))
+                end--;
+        return end;
+    }
+
+    //spaces before the loaded line that justify it within contentWidth
+    private int getPadding(){
+        int freeSpace = this.contentWidth - this.lineBlockWidth;
+        switch (this.options.getJustification()) {
+            case CENTER:
+                return freeSpace / 2;
+            case RIGHT:
+                return freeSpace;
+            case AUTO:
+                return this.options.getPrintRightToLeft() ? freeSpace : 0;
+            default:
+                return 0;
+        }
+    }
+
+    //points the line fields at output line lineIndex, frame lines aren't counted
+    private void loadLine(int lineIndex){
+        if (this.stackedLines != null) {
+            StringBuilder chars = this.stackedLines.get(lineIndex).chars;
+            this.lineChars = chars;
+            this.lineStart = 0;
+            this.lineEnd = chars.length();
+            this.lineTrailingSpaces = 0;
+            this.lineBlockWidth = this.stackWidth; //stacked rows share lines, they are justified as one block
+            this.lineRowIndex = this.stackedLines.get(lineIndex).rowIndex;
+            return;
+        }
+        int rowIndex = lineIndex / this.height;
+        FIGure row = this.rows.get(rowIndex);
+        if (rowIndex != this.loadedRow) {
+            this.lineBlockWidth = row.getWidth() - this.prefix.length();
+            this.loadedRow = rowIndex;
+        }
+        FIGure.FIGureLine figureLine = row.lines[lineIndex % this.height];
+        this.lineRowIndex = rowIndex;
+        this.lineChars = figureLine.content;
+        this.lineStart = this.prefix.length();
+        this.lineEnd = figureLine.content.length();
+        this.lineTrailingSpaces = figureLine.rightSpaces;
+    }
+
+    //where written lines go, hard blanks in appended char sequences are replaced by spaces
+    private static abstract class OutputSink {
+        final char hardBlank;
+
+        OutputSink(char hardBlank){ this.hardBlank = hardBlank; }
+
+        abstract void append(char subCharacter) throws IOException;
+
+        abstract void append(CharSequence chars, int start, int end) throws IOException;
+
+        void appendRepeated(char subCharacter, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                this.append(subCharacter);
+        }
+
+        //chars appended until endCharacters are FIGcharacters of the row, starting at FIGure column firstColumn
+        void startCharacters(int rowIndex, int firstColumn){}
+
+        void endCharacters(){}
+    }
+
+    private static class CharArraySink extends OutputSink {
+        private final char[] chars;
+        int length = 0;
+
+        CharArraySink(char[] chars, char hardBlank){
+            super(hardBlank);
+            this.chars = chars;
+        }
+
+        @Override
+        void append(char subCharacter){ this.chars[this.length++] = subCharacter; }
+
+        @Override
+        void append(CharSequence source, int start, int end){
+            if (source instanceof StringBuilder)
+                ((StringBuilder)source).getChars(start, end, this.chars, this.length);
+            else if (source instanceof String)
+                ((String)source).getChars(start, end, this.chars, this.length);
+            else
+                for (int charIndex = start; charIndex < end; charIndex++)
+                    this.chars[this.length + charIndex - start] = source.charAt(charIndex);
+            Utils.replace(this.chars, this.length, this.length + end - start, this.hardBlank, ' ');
+            this.length += end - start;
+        }
+
+        @Override
+        void appendRepeated(char subCharacter, int count){
+            Arrays.fill(this.chars, this.length, this.length + count, subCharacter);
+            this.length += count;
+        }
+    }
+
+    private static class AppendableSink extends OutputSink {
+        private final Appendable out;
+
+        AppendableSink(Appendable out, char hardBlank){
+            super(hardBlank);
+            this.out = out;
+        }
+
+        @Override
+        void append(char subCharacter) throws IOException { this.out.append(subCharacter); }
+
+        //appends runs between hard blanks in one call each
+        @Override
+        void append(CharSequence chars, int start, int end) throws IOException {
+            int segmentStart = start;
+            for (int charIndex = start; charIndex < end; charIndex++) {
+                if (chars.charAt(charIndex) == this.hardBlank) {
+                    this.out.append(chars, segmentStart, charIndex).append(' ');
+                    segmentStart = charIndex + 1;
+                }
+            }
+            this.out.append(chars, segmentStart, end);
+        }
+    }
+
+    //groups sub-characters into runs of one style for an output format
+    private class FormattedSink extends OutputSink {
+        private final FIGOutputFormat.Output output;
+        private final StringBuilder run = new StringBuilder();
+        private int runStyle = FIGOutputFormat.Output.SAME_STYLE;
+        private int line = 0;
+        private int column = 0;
+        private final int[] firstRowCharacters; //index of each row's first FIGcharacter in the whole paragraph
+        private FIGure characterRow; //row of the FIGcharacters being appended, null outside them
+        private int firstRowCharacter;
+        private int columnShift; //FIGure column less output column
+
+        FormattedSink(FIGOutputFormat.Output output){
+            super(FIGParagraph.this.hardBlank);
+            this.output = output;
+            this.firstRowCharacters = new int[rowCount];
+            for (int rowIndex = 1; rowIndex < rowCount; rowIndex++)
+                this.firstRowCharacters[rowIndex] = this.firstRowCharacters[rowIndex - 1] + rows.get(rowIndex - 1).getCharacterCount();
+        }
+
+        @Override
+        void append(char subCharacter) throws IOException {
+            if (subCharacter == '\n') {
+                this.writeRun();
+                this.output.writeLineBreak();
+                this.line++;
+                this.column = 0;
+                return;
+            }
+            int character = -1;
+            if (this.characterRow != null) {
+                int rowCharacter = this.characterRow.getCharacterAt(this.column + this.columnShift);
+                if (rowCharacter >= 0)
+                    character = this.firstRowCharacter + rowCharacter;
+            }
+            int style = this.output.getStyle(this.line, this.column, character, subCharacter);
+            if (style != FIGOutputFormat.Output.SAME_STYLE && style != this.runStyle) {
+                if (this.runStyle != FIGOutputFormat.Output.SAME_STYLE)
+                    this.writeRun();
+                this.runStyle = style; //an unstyled run takes the style of the sub-character after it
+            }
+            this.run.append(subCharacter);
+            this.column++;
+        }
+
+        @Override
+        void append(CharSequence chars, int start, int end) throws IOException {
+            for (int charIndex = start; charIndex < end; charIndex++) {
+                char subCharacter = chars.charAt(charIndex);
+                this.append(subCharacter == this.hardBlank ? ' ' : subCharacter);
+            }
+        }
+
+        @Override
+        void startCharacters(int rowIndex, int firstColumn){
+            this.characterRow = rows.get(rowIndex);
+            this.firstRowCharacter = this.firstRowCharacters[rowIndex];
+            this.columnShift = firstColumn - this.column;
+        }
+
+        @Override
+        void endCharacters(){ this.characterRow = null; }
+
+        void close() throws IOException {
+            this.writeRun();
+            this.output.close();
+        }
+
+        private void writeRun() throws IOException {
+            if (this.run.length() > 0)
+                this.output.writeRun(this.runStyle, this.run);
+            this.run.setLength(0);
+            this.runStyle = FIGOutputFormat.Output.SAME_STYLE;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.rsimp.jfig;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws FIGures into images, one monospace cell per sub-character.
+ * <p>
+ * Every sub-character and color pair is drawn once into a tile that is cached and copied into each cell using it, so
+ * large FIGures are assembled from tiles rather than laid out as text. Cells are colored like
+ * {@link AnsiOutputFormat} colors them, from a {@link ColorGradient} by column or by FIGcharacter.
+ * </p>
+ * <p>
+ * Only offscreen images are used, so it works in a headless JVM. Immutable apart from the tile cache, and thread safe.
+ * </p>
+ */
+public final class FIGRasterizer {
+    private static final int MAX_CACHED_TILES = 4096; //later tiles are drawn without being cached
+    private static final int MEASURED_FONT_SIZE = 100;
+
+    private final int cellWidth;
+    private final int cellHeight;
+    private final ColorGradient foreground;
+    private final int background; //0xAARRGGBB
+    private final Font font;
+    private final int baseline;
+    private final ConcurrentMap<Long, BufferedImage> tiles = new ConcurrentHashMap<>();
+
+    /**
+     * Black sub-characters on white
+     *
+     * @param cellWidth width of a sub-character cell in pixels
+     * @param cellHeight height of a sub-character cell in pixels
+     */
+    public FIGRasterizer(int cellWidth, int cellHeight){
+        this(cellWidth, cellHeight, ColorGradient.solid(0x000000), 0xFFFFFFFF);
+    }
+
+    /**
+     * @param cellWidth width of a sub-character cell in pixels
+     * @param cellHeight height of a sub-character cell in pixels
+     * @param foreground colors of the sub-characters
+     * @param background 0xAARRGGBB color of the image, 0 for transparent
+     */
+    public FIGRasterizer(int cellWidth, int cellHeight, ColorGradient foreground, int background){
+        if (cellWidth <= 0 || cellHeight <= 0)
+            throw new IllegalArgumentException("Cells must be at least one pixel wide and high");
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.foreground = foreground;
+        this.background = background;
+
+        //largest monospace font whose sub-characters fit a cell
+        Font measuredFont = new Font(Font.MONOSPACED, Font.PLAIN, MEASURED_FONT_SIZE);
+        FontMetrics measuredMetrics = metricsOf(measuredFont);
+        float scale = Math.min(
+            (float)cellHeight / (measuredMetrics.getAscent() + measuredMetrics.getDescent()),
+            (float)cellWidth / Math.max(measuredMetrics.charWidth('M'), 1)
+        );
+        Font font = measuredFont.deriveFont(MEASURED_FONT_SIZE * scale);
+        FontMetrics metrics = metricsOf(font);
+        while (metrics.getAscent() + metrics.getDescent() > cellHeight && font.getSize2D() > 1) {
+            font = font.deriveFont(font.getSize2D() - 0.5f); //metrics are rounded, so they don't scale exactly
+            metrics = metricsOf(font);
+        }
+        this.font = font;
+        this.baseline = (cellHeight - metrics.getAscent() - metrics.getDescent()) / 2 + metrics.getAscent();
+    }
+
+    /**
+     * Draws the FIGure of text into a new image of its size in cells times the cell size
+     *
+     * @param renderer
+     * @param input
+     * @param options
+     */
+    public BufferedImage rasterize(FIGRenderer renderer, CharSequence input, FIGOptions options){
+        RasterFormat format = new RasterFormat();
+        try {
+            renderer.render(input, options, format, new StringBuilder(0));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //nothing is written to the Appendable
+        }
+        return format.image;
+    }
+
+    /**
+     * Draws the FIGure of text as a PNG written to out, the stream isn't closed
+     *
+     * @param renderer
+     * @param input
+     * @param options
+     * @param out
+     * @throws IOException if out fails
+     */
+    public void writePng(FIGRenderer renderer, CharSequence input, FIGOptions options, OutputStream out) throws IOException {
+        ImageIO.write(this.rasterize(renderer, input, options), "png", out);
+    }
+
+    //tile of a sub-character drawn in rgb on a transparent cell
+    private BufferedImage getTile(char subCharacter, int rgb){
+        Long key = (long)subCharacter << 32 | rgb & 0xFFFFFFFFL;
+        BufferedImage tile = this.tiles.get(key);
+        if (tile == null) {
+            tile = new BufferedImage(this.cellWidth, this.cellHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = tile.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setFont(this.font);
+                graphics.setColor(new Color(rgb));
+                FontMetrics metrics = graphics.getFontMetrics();
+                graphics.drawString(String.valueOf(subCharacter), (this.cellWidth - metrics.charWidth(subCharacter)) / 2, this.baseline);
+            } finally {
+                graphics.dispose();
+            }
+            if (this.tiles.size() < MAX_CACHED_TILES) {
+                //racing threads may draw the same tile, only one is kept
+                BufferedImage existingTile = this.tiles.putIfAbsent(key, tile);
+                if (existingTile != null)
+                    tile = existingTile;
+            }
+        }
+        return tile;
+    }
+
+    private static FontMetrics metricsOf(Font font){
+        Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            return graphics.getFontMetrics(font);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    //draws the cells of one FIGure as they are written, each run's style is the color of its sub-characters
+    private class RasterFormat implements FIGOutputFormat {
+        BufferedImage image;
+
+        @Override
+        public Output open(Appendable out, final FIGSize size, final int characterCount){
+            this.image = new BufferedImage(
+                Math.max(size.getWidth() * cellWidth, 1), Math.max(size.getHeight() * cellHeight, 1), BufferedImage.TYPE_INT_ARGB
+            );
+            final Graphics2D graphics = this.image.createGraphics();
+            graphics.setColor(new Color(background, true));
+            graphics.fillRect(0, 0, this.image.getWidth(), this.image.getHeight());
+
+            return new Output() {
+                private int line = 0;
+                private int column = 0;
+
+                @Override
+                public int getStyle(int line, int column, int character, char subCharacter){
+                    if (subCharacter == ' ')
+                        return SAME_STYLE;
+                    return foreground.getColor(column, character, size, characterCount);
+                }
+
+                @Override
+                public void writeRun(int style, CharSequence subCharacters){
+                    for (int charIndex = 0; charIndex < subCharacters.length(); charIndex++, this.column++) {
+                        char subCharacter = subCharacters.charAt(charIndex);
+                        if (subCharacter != ' ')
+                            graphics.drawImage(getTile(subCharacter, style), this.column * cellWidth, this.line * cellHeight, null);
+                    }
+                }
+
+                @Override
+                public void writeLineBreak(){
+                    this.line++;
+                    this.column = 0;
+                }
+
+                @Override
+                public void close(){ graphics.dispose(); }
+            };
+        }
+    }
+}
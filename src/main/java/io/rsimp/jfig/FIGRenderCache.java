@@ -0,0 +1,272 @@
+package io.rsimp.jfig;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe LRU cache of rendered FIGures keyed by renderer, options and input text.
+ * <p>
+ * The cache is bounded both by entry count and by total weight, the weight of an entry being the length of its
+ * input plus the length of its rendered output. Least recently used entries are evicted until both bounds hold,
+ * outputs heavier than the whole cache are rendered but never cached.
+ * </p>
+ * <p>
+ * Hits are read from a concurrent map without locking. They are buffered and applied to the LRU order in batches, so
+ * threads hitting the cache don't contend on one lock. Only misses take the lock, to insert and evict. The buffer is
+ * bounded, hits arriving while it's full don't update the LRU order.
+ * Cached entries hold their renderer weakly, entries of a renderer that was garbage collected are dropped on a later miss.
+ * </p>
+ */
+public class FIGRenderCache {
+    private static final int HIT_BATCH_SIZE = 64; //buffered hits applied to the LRU order at once
+    private static final int MAX_BUFFERED_HITS = 16 * HIT_BATCH_SIZE; //further hits are dropped until the buffer is drained
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ConcurrentMap<Key, String> outputs = new ConcurrentHashMap<>(); //read without locking
+    private final LinkedHashMap<Key, String> accessOrder = new LinkedHashMap<>(16, 0.75f, true); //same entries, guarded by lock
+    private final ConcurrentLinkedQueue<Key> bufferedHits = new ConcurrentLinkedQueue<>(); //hits not yet applied to accessOrder
+    private final AtomicInteger bufferedHitCount = new AtomicInteger(); //bounds bufferedHits, its size() isn't constant time
+    private final ReferenceQueue<FIGRenderer> collectedRenderers = new ReferenceQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long weight; //guarded by lock
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of cached FIGures
+     * @param maxWeight maximum total characters of input and output held by the cache
+     */
+    public FIGRenderCache(int maxEntries, long maxWeight){
+        if (maxEntries < 1 || maxWeight < 1)
+            throw new IllegalArgumentException("maxEntries and maxWeight must be at least 1");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached FIGure or renders and caches it
+     *
+     * @param renderer
+     * @param input
+     * @param options
+     * @return
+     */
+    public String render(FIGRenderer renderer, String input, FIGOptions options){
+        Key key = new Key(renderer, input, options);
+        String output = this.outputs.get(key);
+        if (output != null) {
+            this.bufferHit(key);
+            if (this.hits.incrementAndGet() % HIT_BATCH_SIZE == 0 && this.lock.tryLock()) {
+                try {
+                    this.applyBufferedHits();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+            return output;
+        }
+
+        //render outside the lock, threads racing on the same key render the same output
+        this.misses.incrementAndGet();
+        output = renderer.render(input, options);
+        long entryWeight = weigh(input, output);
+        if (entryWeight <= this.maxWeight) {
+            this.lock.lock();
+            try {
+                this.removeCollectedRenderers();
+                this.applyBufferedHits(); //evict by the latest access order
+                Key cachedKey = new Key(key, this.collectedRenderers);
+                String previous = this.accessOrder.put(cachedKey, output);
+                this.outputs.put(cachedKey, output);
+                this.weight += entryWeight - (previous != null ? weigh(input, previous) : 0);
+                this.evictToBounds();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Removes every cached FIGure
+     */
+    public void clear(){
+        this.lock.lock();
+        try {
+            this.accessOrder.clear();
+            this.outputs.clear();
+            this.applyBufferedHits(); //only drains the buffer, its hits find no entries
+            this.weight = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return snapshot of the cache counters
+     */
+    public Stats getStats(){
+        this.lock.lock();
+        try {
+            return new Stats(this.hits.get(), this.misses.get(), this.evictions.get(), this.accessOrder.size(), this.weight);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    //moves every buffered hit to the most recently used end, hits on entries evicted meanwhile are ignored
+    private void applyBufferedHits(){
+        for (Key hit; (hit = this.pollHit()) != null; )
+            this.accessOrder.get(hit);
+    }
+
+    //a full buffer drops the hit, under contention a few LRU updates are lost rather than buffering without bound
+    private void bufferHit(Key key){
+        if (this.bufferedHitCount.incrementAndGet() <= MAX_BUFFERED_HITS)
+            this.bufferedHits.offer(key);
+        else
+            this.bufferedHitCount.decrementAndGet();
+    }
+
+    private Key pollHit(){
+        Key hit = this.bufferedHits.poll();
+        if (hit != null)
+            this.bufferedHitCount.decrementAndGet();
+        return hit;
+    }
+
+    private void removeCollectedRenderers(){
+        for (Reference<? extends FIGRenderer> collected; (collected = this.collectedRenderers.poll()) != null; ) {
+            Key cachedKey = ((RendererReference)collected).key;
+            String output = this.accessOrder.remove(cachedKey);
+            if (output != null) {
+                this.outputs.remove(cachedKey);
+                this.weight -= weigh(cachedKey.input, output);
+            }
+        }
+    }
+
+    private void evictToBounds(){
+        Iterator<Map.Entry<Key, String>> eldest = this.accessOrder.entrySet().iterator();
+        while ((this.accessOrder.size() > this.maxEntries || this.weight > this.maxWeight) && eldest.hasNext()) {
+            Map.Entry<Key, String> entry = eldest.next();
+            this.weight -= weigh(entry.getKey().input, entry.getValue());
+            this.outputs.remove(entry.getKey());
+            eldest.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private static long weigh(String input, String output){
+        return (long)input.length() + output.length();
+    }
+
+    //renderers are compared by identity, one renderer per parsed font
+    //lookup keys hold their renderer, cached keys only reference it weakly so the cache doesn't keep fonts loaded
+    private static final class Key {
+        private final FIGRenderer renderer; //null in cached keys
+        private final RendererReference rendererReference; //null in lookup keys
+        private final String input;
+        private final FIGOptions options;
+        private final int hash;
+
+        private Key(FIGRenderer renderer, String input, FIGOptions options){
+            this.renderer = renderer;
+            this.rendererReference = null;
+            this.input = input;
+            this.options = options;
+            this.hash = 31 * (31 * System.identityHashCode(renderer) + input.hashCode()) + options.hashCode();
+        }
+
+        //cached copy of a lookup key, enqueued on collectedRenderers once its renderer is collected
+        private Key(Key lookupKey, ReferenceQueue<FIGRenderer> collectedRenderers){
+            this.renderer = null;
+            this.rendererReference = new RendererReference(lookupKey.renderer, this, collectedRenderers);
+            this.input = lookupKey.input;
+            this.options = lookupKey.options;
+            this.hash = lookupKey.hash;
+        }
+
+        private FIGRenderer getRenderer(){
+            return this.renderer != null ? this.renderer : this.rendererReference.get();
+        }
+
+        //a cached key whose renderer was collected only equals itself, so it can still be removed
+        @Override
+        public boolean equals(Object other){
+            if (this == other)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key otherKey = (Key)other;
+            FIGRenderer renderer = this.getRenderer();
+            return this.hash == otherKey.hash
+                && renderer != null
+                && renderer == otherKey.getRenderer()
+                && this.input.equals(otherKey.input)
+                && this.options.equals(otherKey.options);
+        }
+
+        @Override
+        public int hashCode(){ return this.hash; }
+    }
+
+    private static final class RendererReference extends WeakReference<FIGRenderer> {
+        private final Key key;
+
+        private RendererReference(FIGRenderer renderer, Key key, ReferenceQueue<FIGRenderer> collectedRenderers){
+            super(renderer, collectedRenderers);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Point in time copy of the cache counters
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int entryCount;
+        private final long weight;
+
+        private Stats(long hitCount, long missCount, long evictionCount, int entryCount, long weight){
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.entryCount = entryCount;
+            this.weight = weight;
+        }
+
+        public long getHitCount(){ return this.hitCount; }
+
+        public long getMissCount(){ return this.missCount; }
+
+        public long getEvictionCount(){ return this.evictionCount; }
+
+        public int getEntryCount(){ return this.entryCount; }
+
+        /**
+         * @return total characters of input and output currently cached
+         */
+        public long getWeight(){ return this.weight; }
+
+        public double getHitRate(){
+            long requestCount = this.hitCount + this.missCount;
+            return requestCount == 0 ? 0 : (double)this.hitCount / requestCount;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package io.rsimp.jfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Immutable renderer for a single parsed FIGfont.
+ * <p>
+ * A FIGRenderer is thread safe, one instance can serve any number of threads concurrently.
+ * Layout, print direction and prefix are passed per call through {@link FIGOptions}.
+ * Smush and kerning tables are built once per layout on first use and shared by all threads. Only the most recently built
+ * layouts are kept besides the font's own.
+ * </p>
+ */
+public class FIGRenderer {
+    private static final int LAYOUT_BITS = 32767; //horizontal and vertical layout
+    private static final int BATCH_CHUNKS_PER_PROCESSOR = 4; //enough chunks to balance uneven input lengths
+    private static final int MAX_COMPILED_LAYOUTS = 16; //beyond it the oldest built layout is dropped, the font's own is kept
+
+    private final FIGFont figFont;
+    private final FIGOptions defaultOptions;
+    private final ConcurrentMap<Integer, CompiledLayout> compiledLayouts = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Integer> compiledLayoutOrder = new ConcurrentLinkedQueue<>(); //masks in build order
+
+    /**
+     * FIGRenderer constructor that takes figfont in as a file
+     * <p>
+     * The file can be a .flf or TOIlet .tlf font, either one zipped, or a font compiled by {@link FIGFontCompiler}.
+     * Compiled fonts are read in one pass, zipped fonts are decoded as they are parsed.
+     * </p>
+     *
+     * @param figfont
+     * @throws IOException
+     */
+    public FIGRenderer(File figfont) throws IOException { this(FIGFont.read(figfont, false)); }
+
+    /**
+     * FIGRenderer constructor that takes figfont in as a URL
+     *
+     * @param figfontURL
+     * @throws IOException
+     */
+    public FIGRenderer(URL figfontURL) throws IOException { this(figfontURL.openStream()); }
+
+    /**
+     * FIGRenderer constructor that takes figfont as any InputStream
+     * <p>
+     * Accepts the same fonts as {@link #FIGRenderer(File)}, the format is detected from the first bytes of the stream.
+     * </p>
+     *
+     * @param figfontStream
+     * @throws IOException
+     */
+    public FIGRenderer(InputStream figfontStream) throws IOException { this(FIGFont.read(figfontStream, false)); }
+
+    /**
+     * Loads a text font lazily: glyphs are only located when loading and each one is parsed the first time it's rendered
+     * <p>
+     * Meant for large Unicode fonts where typical input uses a small part of thousands of glyphs.
+     * Compiled fonts are loaded as usual, they are already cheap to load.
+     * </p>
+     *
+     * @param figfont
+     * @throws IOException
+     */
+    public static FIGRenderer loadLazily(File figfont) throws IOException { return new FIGRenderer(FIGFont.read(figfont, true)); }
+
+    /**
+     * Loads a text font lazily from any InputStream, see {@link #loadLazily(File)}
+     *
+     * @param figfontStream
+     * @throws IOException
+     */
+    public static FIGRenderer loadLazily(InputStream figfontStream) throws IOException { return new FIGRenderer(FIGFont.read(figfontStream, true)); }
+
+    private FIGRenderer(FIGFont figFont){
+        this.figFont = figFont;
+        this.defaultOptions = new FIGOptions(this.figFont.getLayoutMask(), this.figFont.getPrintRightToLeft(), "", 0, 0,
+            FIGOptions.Justification.LEFT, false, FIGOptions.NO_BORDER);
+    }
+
+    /**
+     * @return options with the layout and print direction from the font header, no prefix, no width limit, code point 0 as
+     * fallback and left justified, untrimmed, unframed lines
+     */
+    public FIGOptions getDefaultOptions(){ return this.defaultOptions; }
+
+    /**
+     * Converts a string into a FIGure using the font's default options
+     *
+     * @param input
+     * @return
+     */
+    public String render(String input){
+        return this.render(input, this.defaultOptions);
+    }
+
+    /**
+     * Converts a string into a FIGure
+     *
+     * @param input
+     * @param options
+     * @return
+     */
+    public String render(String input, FIGOptions options){
+        return this.layOut(input, options).toString();
+    }
+
+    /**
+     * Measures the FIGure of a string using the font's default options, see {@link #measure(CharSequence, FIGOptions)}
+     *
+     * @param input
+     */
+    public FIGSize measure(CharSequence input){
+        return this.measure(input, this.defaultOptions);
+    }
+
+    /**
+     * Measures the FIGure of text without rendering it, the size is exactly that of {@link #render(String, FIGOptions)}'s output
+     * <p>
+     * Characters are laid out as for rendering, so rows are wrapped and smushed, but no output is written.
+     * </p>
+     *
+     * @param input
+     * @param options
+     */
+    public FIGSize measure(CharSequence input, FIGOptions options){
+        return this.layOut(input, options).measure();
+    }
+
+    /**
+     * Converts text into a FIGure written straight to out, without building the output as a String first
+     *
+     * @param input
+     * @param options
+     * @param out any Appendable, for example a StringBuilder or a Writer
+     * @throws IOException if out fails
+     */
+    public void render(CharSequence input, FIGOptions options, Appendable out) throws IOException {
+        this.layOut(input, options).writeTo(out);
+    }
+
+    /**
+     * Converts a string into a FIGure written in an output format, for example colored with ANSI escapes or as HTML
+     *
+     * @param input
+     * @param options
+     * @param format
+     * @return
+     */
+    public String render(String input, FIGOptions options, FIGOutputFormat format){
+        StringBuilder out = new StringBuilder();
+        try {
+            this.render(input, options, format, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //StringBuilder never throws
+        }
+        return out.toString();
+    }
+
+    /**
+     * Converts text into a FIGure written to out in an output format, styles are applied as the FIGure is written
+     *
+     * @param input
+     * @param options
+     * @param format
+     * @param out any Appendable, for example a StringBuilder or a Writer
+     * @throws IOException if out fails
+     */
+    public void render(CharSequence input, FIGOptions options, FIGOutputFormat format, Appendable out) throws IOException {
+        this.layOut(input, options).writeTo(out, format);
+    }
+
+    /**
+     * Converts text into a FIGure encoded straight to out, the stream is flushed but not closed
+     *
+     * @param input
+     * @param options
+     * @param out
+     * @param charset
+     * @throws IOException if out fails
+     */
+    public void render(CharSequence input, FIGOptions options, OutputStream out, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+        this.render(input, options, writer);
+        writer.flush();
+    }
+
+    /**
+     * Converts many strings into FIGures in parallel, results are returned in input order
+     * <p>
+     * Inputs are split into chunks run as tasks on the executor, each task reuses one set of row and output buffers for all
+     * of its inputs. The executor isn't shut down.
+     * </p>
+     *
+     * @param inputs
+     * @param options
+     * @param executor for example a fixed thread pool or a ForkJoinPool
+     * @return rendered FIGures in the order of inputs
+     * @throws InterruptedException if interrupted while waiting for the tasks, the remaining tasks are cancelled
+     */
+    public List<String> renderAll(Collection<? extends CharSequence> inputs, final FIGOptions options, Executor executor) throws InterruptedException {
+        final List<CharSequence> inputList = new ArrayList<>(inputs);
+        final String[] outputs = new String[inputList.size()];
+        int chunkCount = Math.min(inputList.size(), Runtime.getRuntime().availableProcessors() * BATCH_CHUNKS_PER_PROCESSOR);
+        List<FutureTask<Void>> chunks = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int chunkStart = (int)((long)inputList.size() * chunk / chunkCount);
+            final int chunkEnd = (int)((long)inputList.size() * (chunk + 1) / chunkCount);
+            FutureTask<Void> chunkTask = new FutureTask<>(() -> {
+                FIGParagraph scratch = null;
+                for (int inputIndex = chunkStart; inputIndex < chunkEnd; inputIndex++) {
+                    scratch = this.layOut(inputList.get(inputIndex), options, scratch);
+                    outputs[inputIndex] = scratch.toString();
+                }
+                return null;
+            });
+            chunks.add(chunkTask);
+            executor.execute(chunkTask);
+        }
+
+        for (FutureTask<Void> chunkTask : chunks) {
+            try {
+                chunkTask.get();
+            } catch (InterruptedException e) {
+                cancelAll(chunks); //the outputs are abandoned, don't leave chunks queued on the executor
+                throw e;
+            } catch (ExecutionException e) {
+                cancelAll(chunks);
+                Throwable cause = e.getCause();
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                throw (RuntimeException)cause; //chunk tasks don't throw checked exceptions
+            }
+        }
+        return Arrays.asList(outputs);
+    }
+
+    private static void cancelAll(List<FutureTask<Void>> chunks){
+        for (FutureTask<Void> chunkTask : chunks)
+            chunkTask.cancel(false);
+    }
+
+    /**
+     * Starts an incremental FIGure using the font's default options, see {@link #newBuilder(FIGOptions)}
+     *
+     * @throws IllegalArgumentException if the font prints right to left
+     */
+    public FIGureBuilder newBuilder(){
+        return this.newBuilder(this.defaultOptions);
+    }
+
+    /**
+     * Starts an incremental FIGure that characters are appended to and removed from one at a time
+     *
+     * @param options
+     * @throws IllegalArgumentException if the options set a width or print right to left
+     */
+    public FIGureBuilder newBuilder(FIGOptions options){
+        if (options.getWidth() > 0)
+            throw new IllegalArgumentException("FIGureBuilder doesn't wrap rows, options can't set a width");
+        if (options.getPrintRightToLeft())
+            throw new IllegalArgumentException("FIGureBuilder only lays out left to right");
+        return new FIGureBuilder(
+            this,
+            this.getCompiledLayout(options.getLayoutMask()),
+            this.figFont.get(options.getFallbackCodePoint()),
+            this.figFont.getHardBlank(),
+            this.figFont.getHeight(),
+            options
+        );
+    }
+
+    private FIGParagraph layOut(CharSequence input, FIGOptions options){
+        return this.layOut(input, options, null);
+    }
+
+    //lays out input into scratch when given, reusing its buffers, otherwise into a new FIGParagraph
+    //every input line starts a new row, rows are wrapped at word boundaries when the options set a width
+    private FIGParagraph layOut(CharSequence input, FIGOptions options, FIGParagraph scratch){
+        FIGParagraph paragraph = scratch != null ? scratch : new FIGParagraph(this.figFont.getHeight());
+        CompiledLayout layout = this.getCompiledLayout(options.getLayoutMask());
+        paragraph.clear(options, this.figFont.getHardBlank(), layout.verticalStacker);
+        FIGCharacter fallback = this.figFont.get(options.getFallbackCodePoint());
+        int lineStart = 0;
+        int lineEnd;
+        do {
+            lineEnd = lineStart;
+            while (lineEnd < input.length() && input.charAt(lineEnd) != '\n')
+                lineEnd++;
+            int contentEnd = lineEnd > lineStart && input.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            this.layOutLine(paragraph, input, lineStart, contentEnd, options, layout, fallback);
+            lineStart = lineEnd + 1;
+        } while (lineEnd < input.length());
+        return paragraph;
+    }
+
+    //lays out input from lineStart to lineEnd, read by code point so surrogate pairs map to FIGcharacters above U+FFFF
+    //rows are broken in reading order, right to left rows are then laid out backwards
+    private void layOutLine(FIGParagraph paragraph, CharSequence input, int lineStart, int lineEnd, FIGOptions options, CompiledLayout layout, FIGCharacter fallback){
+        boolean rightToLeft = options.getPrintRightToLeft();
+        FIGure row = paragraph.addRow();
+        int maxWidth = options.getWidth() > 0 ? Math.max(options.getWidth() - options.getBorderWidth(), 1) : 0; //rows fit inside the frame
+        if (maxWidth <= 0) {
+            if (rightToLeft) {
+                this.layOutBackwards(row, input, lineStart, lineEnd, layout, fallback);
+                return;
+            }
+            for (int inputIndex = lineStart; inputIndex < lineEnd; ) {
+                int codePoint = Character.codePointAt(input, inputIndex);
+                this.append(row, codePoint, layout, fallback);
+                inputIndex += Character.charCount(codePoint);
+            }
+            return;
+        }
+
+        //widths are measured as characters are appended, marks undo the appends that overflowed the row
+        //right to left rows can't grow at their end, so each longer candidate is laid out again from the row mark
+        int rowStart = lineStart;
+        int lastSpaceIndex = -1;
+        boolean isWrappedRow = false;
+        row.mark(paragraph.rowMark);
+        for (int inputIndex = lineStart; inputIndex < lineEnd; ) {
+            int codePoint = Character.codePointAt(input, inputIndex);
+            int nextIndex = inputIndex + Character.charCount(codePoint);
+            if (codePoint == ' ') {
+                if (isWrappedRow && row.getCharacterCount() == 0) {
+                    inputIndex = rowStart = nextIndex;
+                    continue; //wrapped rows don't start with the spaces they were broken at
+                }
+                if (!rightToLeft)
+                    row.mark(paragraph.spaceMark);
+                lastSpaceIndex = inputIndex;
+            }
+            if (rightToLeft) {
+                row.reset(paragraph.rowMark);
+                this.layOutBackwards(row, input, rowStart, nextIndex, layout, fallback);
+            } else {
+                row.mark(paragraph.characterMark);
+                this.append(row, codePoint, layout, fallback);
+            }
+
+            if (row.getWidth() > maxWidth && row.getCharacterCount() > 1) {
+                //break at the last word boundary, the partial word moves to the next row
+                //without a word boundary the word is broken before this character
+                boolean atSpace = lastSpaceIndex >= 0 && lastSpaceIndex != inputIndex;
+                int rowEnd = atSpace ? lastSpaceIndex : inputIndex;
+                if (rightToLeft) {
+                    row.reset(paragraph.rowMark);
+                    this.layOutBackwards(row, input, rowStart, rowEnd, layout, fallback);
+                } else {
+                    row.reset(atSpace ? paragraph.spaceMark : paragraph.characterMark);
+                }
+                nextIndex = atSpace ? lastSpaceIndex + 1 : inputIndex;
+                row = paragraph.addRow();
+                row.mark(paragraph.rowMark);
+                rowStart = nextIndex;
+                lastSpaceIndex = -1;
+                isWrappedRow = true;
+            }
+            inputIndex = nextIndex;
+        }
+    }
+
+    //appends input from start to end last character first, each character is still appended to the right of the row,
+    //so smushing sees the same left and right sub-characters as it would for the reversed text
+    private void layOutBackwards(FIGure row, CharSequence input, int start, int end, CompiledLayout layout, FIGCharacter fallback){
+        for (int inputIndex = end; inputIndex > start; ) {
+            int codePoint = Character.codePointBefore(input, inputIndex);
+            this.append(row, codePoint, layout, fallback);
+            inputIndex -= Character.charCount(codePoint);
+        }
+    }
+
+    //characters missing from the font are replaced by fallback, or skipped when it's null too
+    void append(FIGure row, int codePoint, CompiledLayout layout, FIGCharacter fallback){
+        FIGCharacter figCharacter = this.figFont.get(codePoint);
+        if (figCharacter == null)
+            figCharacter = fallback;
+        if (figCharacter == null)
+            return;
+        switch(layout.mode){
+            case FULL_SIZE:
+                row.append(figCharacter);
+                break;
+            case FITTED:
+                row.fittedAppend(figCharacter, layout.kerningTable);
+                break;
+            case SMUSHED:
+                row.smushAppend(figCharacter, layout.kerningTable);
+                break;
+        }
+    }
+
+    //masks are canonical so bits a layout mode ignores don't build another layout
+    private CompiledLayout getCompiledLayout(int layoutMask){
+        Integer fullMask = Layout.canonicalMask(layoutMask & LAYOUT_BITS);
+        CompiledLayout layout = this.compiledLayouts.get(fullMask);
+        if (layout == null) {
+            //racing threads may build the same layout, only one is kept
+            layout = new CompiledLayout(Layout.fromFullMask(fullMask));
+            CompiledLayout existingLayout = this.compiledLayouts.putIfAbsent(fullMask, layout);
+            if (existingLayout != null)
+                return existingLayout;
+            this.compiledLayoutOrder.offer(fullMask);
+            this.dropOldestLayouts();
+        }
+        return layout;
+    }
+
+    //renders holding a dropped layout finish with it, later renders build it again
+    private void dropOldestLayouts(){
+        Integer fontMask = Layout.canonicalMask(this.figFont.getLayoutMask() & LAYOUT_BITS);
+        while (this.compiledLayouts.size() > MAX_COMPILED_LAYOUTS) {
+            Integer oldestMask = this.compiledLayoutOrder.poll();
+            if (oldestMask == null)
+                return;
+            if (oldestMask.equals(fontMask))
+                this.compiledLayoutOrder.offer(oldestMask);
+            else
+                this.compiledLayouts.remove(oldestMask);
+        }
+    }
+
+    //layout modes with their smush and kerning tables, shared by every render using the same layout
+    class CompiledLayout {
+        final LayoutMode mode;
+        final KerningTable kerningTable;
+        final VerticalStacker verticalStacker;
+
+        private CompiledLayout(Layout layout){
+            this.mode = layout.horizontal.mode;
+            //smush results are looked up from a table built once per layout, keeping conversion allocation free
+            SmushTable smushTable = this.mode == LayoutMode.SMUSHED
+                ? new SmushTable(SmushRules.horizontalRules(layout.horizontal, figFont.getHardBlank()))
+                : null;
+            this.kerningTable = new KerningTable(figFont.getHeight(), smushTable);
+            this.verticalStacker = new VerticalStacker(layout.vertical, figFont.getHardBlank());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.rsimp.jfig;
+
+/**
+ * Size of a rendered FIGure in sub-characters, as measured by {@link FIGRenderer#measure(CharSequence, FIGOptions)}.
+ */
+public final class FIGSize {
+    private final int width;
+    private final int height;
+
+    FIGSize(int width, int height){
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return length of the longest output line, including the prefix and trailing spaces
+     */
+    public int getWidth(){ return this.width; }
+
+    /**
+     * @return number of output lines
+     */
+    public int getHeight(){ return this.height; }
+
+    @Override
+    public boolean equals(Object other){
+        if (this == other)
+            return true;
+        if (!(other instanceof FIGSize))
+            return false;
+        FIGSize otherSize = (FIGSize)other;
+        return this.width == otherSize.width && this.height == otherSize.height;
+    }
+
+    @Override
+    public int hashCode(){ return 31 * this.width + this.height; }
+
+    @Override
+    public String toString(){ return this.width + "x" + this.height; }
+}
@@ -0,0 +1,298 @@
+package io.rsimp.jfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line interface taking the common figlet flags.
+ * <p>
+ * Renders the message given after the flags, or every line of standard input as it is read when there is no message.
+ * Like figlet, output is wrapped and aligned within 80 columns unless -w gives another width.
+ * Fonts are looked up by name in the font directory, trying the .flc, .flf and .tlf extensions, or given as a path.
+ * A name may carry one of those extensions, like {@code -f slant.flf} in figlet.
+ * </p>
+ * <p>
+ * With {@code --server <port>} it stays resident instead, keeping fonts loaded and serving clients on a loopback port
+ * so scripts only pay the JVM startup once. A client sends one line of flags, then message lines, and reads back their
+ * FIGures, for example {@code printf -- '-f slant -c\nHello\n' | nc 127.0.0.1 <port>}. Clients can only use fonts of
+ * the server's font directory by name and can't give -d.
+ * </p>
+ * <p>
+ * Usage: {@code java io.rsimp.jfig.FIGlet [-f font] [-d fontdir] [-w width] [-k|-S|-W|-s|-o|-m layout] [-R|-L|-X] [-c|-l|-r|-x] [message]}
+ * </p>
+ */
+public final class FIGlet {
+    private static final String USAGE =
+        "Usage: FIGlet [-f font] [-d fontdir] [-w width] [-k|-S|-W|-s|-o|-m layout] [-R|-L|-X] [-c|-l|-r|-x] [message]\n" +
+        "       FIGlet --server <port> [-d fontdir]";
+    private static final String DEFAULT_FONT = "standard";
+    private static final int DEFAULT_WIDTH = 80; //figlet's output width without -w
+    private static final String[] FONT_EXTENSIONS = { ".flc", ".flf", ".tlf" }; //compiled fonts first, they load fastest
+    private static final int HORIZONTAL_FITTING = 64;
+    private static final int HORIZONTAL_SMUSHING = 128;
+    private static final int SMUSHING_RULES = 63; //-m keeps only the horizontal smushing rules, like figlet
+    private static final int HORIZONTAL_LAYOUT = 255;
+    private static final int SERVER_THREADS = 8;
+    private static final int SERVER_QUEUE = 64; //clients waiting for a thread, more are turned away
+    private static final int CLIENT_TIMEOUT_MILLIS = 30000; //clients silent for longer are dropped
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private FIGlet(){}
+
+    public static void main(String[] args) throws IOException {
+        String fontDirectory = System.getenv("FIGLET_FONTDIR") != null ? System.getenv("FIGLET_FONTDIR") : ".";
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = -1;
+            try {
+                if (args.length == 2 || args.length == 4 && args[2].equals("-d"))
+                    port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            if (args.length == 4)
+                fontDirectory = args[3];
+            try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                System.err.println("Serving FIGures on " + serverSocket.getLocalSocketAddress());
+                Executor executor = new ThreadPoolExecutor(SERVER_THREADS, SERVER_THREADS, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(SERVER_QUEUE));
+                serve(serverSocket, fontDirectory, new FIGFontRegistry(64), executor);
+            }
+            return;
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()));
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
+        try {
+            run(args, fontDirectory, FIGFontRegistry.getGlobal(), in, out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            out.flush();
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Renders the message in args, or every line of in when there is none, flushing out after each FIGure
+     *
+     * @param args figlet flags and message
+     * @param fontDirectory where fonts are looked up unless -d is given
+     * @param fonts registry fonts are loaded through
+     * @param in
+     * @param out
+     * @throws IllegalArgumentException if the flags are invalid
+     * @throws IOException if the font can't be loaded or out fails
+     */
+    static void run(String[] args, String fontDirectory, FIGFontRegistry fonts, BufferedReader in, Writer out) throws IOException {
+        run(args, fontDirectory, false, fonts, in, out);
+    }
+
+    //server clients only get fonts of the server's directory, given by name
+    private static void run(String[] args, String fontDirectory, boolean fontNamesOnly, FIGFontRegistry fonts, BufferedReader in, Writer out) throws IOException {
+        String font = DEFAULT_FONT;
+        int width = DEFAULT_WIDTH;
+        String layout = null; //last layout flag, applied once the font is loaded
+        int oldLayout = 0;
+        Boolean printRightToLeft = null;
+        FIGOptions.Justification justification = null;
+
+        int argIndex = 0;
+        for (; argIndex < args.length && args[argIndex].startsWith("-") && args[argIndex].length() > 1; argIndex++) {
+            String flag = args[argIndex];
+            if (flag.equals("--")) {
+                argIndex++;
+                break;
+            }
+            switch (flag) {
+                case "-f": font = value(args, ++argIndex, flag); break;
+                case "-d":
+                    if (fontNamesOnly)
+                        throw new IllegalArgumentException("Option -d isn't accepted by the server");
+                    fontDirectory = value(args, ++argIndex, flag);
+                    break;
+                case "-w": width = number(value(args, ++argIndex, flag), flag); break;
+                case "-m":
+                    layout = flag;
+                    oldLayout = number(value(args, ++argIndex, flag), flag);
+                    if (oldLayout < -1)
+                        throw new IllegalArgumentException("Option -m needs a layout of -1 or more: " + oldLayout);
+                    break;
+                case "-k": case "-S": case "-W": case "-s": case "-o": layout = flag; break;
+                case "-R": printRightToLeft = true; break;
+                case "-L": printRightToLeft = false; break;
+                case "-X": printRightToLeft = null; break;
+                case "-c": justification = FIGOptions.Justification.CENTER; break;
+                case "-l": justification = FIGOptions.Justification.LEFT; break;
+                case "-r": justification = FIGOptions.Justification.RIGHT; break;
+                case "-x": justification = FIGOptions.Justification.AUTO; break;
+                default: throw new IllegalArgumentException("Unknown option: " + flag);
+            }
+        }
+
+        FIGRenderer renderer = fonts.get(findFont(font, fontDirectory, fontNamesOnly));
+        FIGOptions options = renderer.getDefaultOptions();
+        if (layout != null) {
+            switch (layout) {
+                case "-k": options = options.withKerningMode(); break;
+                case "-W": options = options.withFullWidthMode(); break;
+                case "-o": options = options.withUniversalSmushing(); break;
+                case "-m": //-1 is full width, 0 kerning and anything else smushing by its rule bits, the vertical layout is kept
+                    if (oldLayout < 0)
+                        options = options.withFullWidthMode();
+                    else if (oldLayout == 0)
+                        options = options.withKerningMode();
+                    else
+                        options = options.withLayout(options.getLayoutMask() & ~HORIZONTAL_LAYOUT | oldLayout & SMUSHING_RULES | HORIZONTAL_SMUSHING);
+                    break;
+                case "-S": //smush by the font's rules even if it asks for kerning or full width
+                    options = options.withLayout(options.getLayoutMask() & ~HORIZONTAL_FITTING | HORIZONTAL_SMUSHING);
+                    break;
+                default: break; //-s is the font's own layout
+            }
+        }
+        if (printRightToLeft != null)
+            options = options.withPrintRightToLeft(printRightToLeft);
+        options = options.withWidth(width);
+        if (justification != null)
+            options = options.withJustification(justification);
+
+        if (argIndex < args.length) {
+            StringBuilder message = new StringBuilder(args[argIndex]);
+            for (argIndex++; argIndex < args.length; argIndex++)
+                message.append(' ').append(args[argIndex]);
+            renderer.render(message, options, out);
+            out.write('\n');
+            out.flush();
+            return;
+        }
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            renderer.render(line, options, out);
+            out.write('\n'); //FIGures don't end with a line break
+            out.flush();
+        }
+    }
+
+    /**
+     * Accepts clients until the socket is closed, each is served on the executor with fonts from one shared registry
+     * <p>
+     * Clients the executor rejects are disconnected, clients that send nothing for 30 seconds are dropped.
+     * </p>
+     *
+     * @param serverSocket
+     * @param fontDirectory the only directory clients can use fonts from
+     * @param fonts registry keeping fonts loaded between clients
+     * @param executor runs one task per client, bounded so clients can't exhaust the server's threads
+     * @throws IOException if accepting fails other than by the socket being closed
+     */
+    static void serve(ServerSocket serverSocket, final String fontDirectory, final FIGFontRegistry fonts, Executor executor) throws IOException {
+        try {
+            while (!serverSocket.isClosed()) {
+                final Socket client;
+                try {
+                    client = serverSocket.accept();
+                } catch (IOException e) {
+                    if (serverSocket.isClosed())
+                        return;
+                    throw e;
+                }
+                try {
+                    executor.execute(() -> serveClient(client, fontDirectory, fonts));
+                } catch (RejectedExecutionException e) {
+                    client.close(); //too many clients already waiting
+                }
+            }
+        } finally {
+            if (executor instanceof ExecutorService)
+                ((ExecutorService)executor).shutdown();
+        }
+    }
+
+    //first line holds the flags, the following lines are rendered like standard input
+    private static void serveClient(Socket client, String fontDirectory, FIGFontRegistry fonts){
+        try (Socket socket = client) {
+            socket.setSoTimeout(CLIENT_TIMEOUT_MILLIS);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+            String flags = in.readLine();
+            try {
+                String trimmedFlags = flags == null ? "" : flags.trim();
+                run(trimmedFlags.isEmpty() ? new String[0] : trimmedFlags.split("\\s+"), fontDirectory, true, fonts, in, out);
+            } catch (IllegalArgumentException e) {
+                writeError(out, e.getMessage());
+            } catch (IOException e) {
+                writeError(out, "font can't be loaded"); //the cause may name server paths
+            }
+        } catch (IOException e) {
+            //the client went away, nothing left to tell it
+        }
+    }
+
+    private static void writeError(Writer out, String message){
+        PrintWriter error = new PrintWriter(out);
+        error.println("error: " + message);
+        error.flush();
+    }
+
+    //a path to an existing file is used as is, anything else is a font name in the directory, with or without its extension
+    //with fontNamesOnly paths are rejected, so only fonts directly in the directory can be used
+    private static File findFont(String font, String fontDirectory, boolean fontNamesOnly) throws IOException {
+        if (fontNamesOnly) {
+            if (font.startsWith(".") || font.indexOf('/') >= 0 || font.indexOf('\\') >= 0 || font.indexOf(File.separatorChar) >= 0)
+                throw new IllegalArgumentException("Fonts are given by name on the server: " + font);
+        } else if (new File(font).isFile()) {
+            return new File(font);
+        }
+        String name = font;
+        for (String extension : FONT_EXTENSIONS) {
+            if (name.toLowerCase().endsWith(extension)) {
+                name = name.substring(0, name.length() - extension.length()); //-f slant.flf names the slant font
+                break;
+            }
+        }
+        for (String extension : FONT_EXTENSIONS) {
+            File fontFile = new File(fontDirectory, name + extension);
+            if (fontFile.isFile())
+                return fontFile;
+        }
+        if (fontNamesOnly)
+            throw new IllegalArgumentException("Font not found: " + font);
+        throw new IOException("Font not found: " + font + " in " + fontDirectory);
+    }
+
+    private static String value(String[] args, int argIndex, String flag){
+        if (argIndex >= args.length)
+            throw new IllegalArgumentException("Option " + flag + " needs a value");
+        return args[argIndex];
+    }
+
+    private static int number(String value, String flag){
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + flag + " needs a number: " + value);
+        }
+    }
+}
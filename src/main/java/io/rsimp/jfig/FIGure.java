@@ -1,123 +1,206 @@
 package io.rsimp.jfig;
 
-import io.rsimp.jfig.SmushRules.ISmushFunction;
-import java.util.HashMap;
+import java.util.Arrays;
+import io.rsimp.jfig.SmushRules.ICharSmushFunction;
 
 class FIGure {
     final FIGureLine[] lines;
+    private final char[] smushedChars; //scratch space for smushAppend, one sub-character per line
+    private FIGCharacter trailingCharacter; //last appended character when its non blank lines match the line endings, else null
+    private int characterCount;
+    private int[] glyphStarts = new int[16]; //column each appended character starts at, prefix included
+
+    FIGure(int height, String prefix){
+        this.lines = new FIGureLine[height];
+        this.smushedChars = new char[height];
+        for(int lineIndex = 0; lineIndex < this.lines.length; lineIndex++)
+            this.lines[lineIndex] = new FIGureLine();
+        this.restart(prefix);
+    }
 
-    FIGure(FIGCharacter figCharacter, String prefix){
-        this.lines = new FIGureLine[figCharacter.height];
-        for(int lineIndex = 0; lineIndex < this.lines.length; lineIndex++){
-            FIGureLine line = new FIGureLine();
-            FIGCharacter.FIGCharacterLine characterLine = figCharacter.lines[lineIndex];
-            String lineContent = !characterLine.isEmpty()
-                ? prefix + Utils.repeatString(" ", characterLine.leftSpaces) + characterLine.content
-                : prefix;
-            line.content.append(lineContent);
-            line.rightSpaces = characterLine.rightSpaces;
-            this.lines[lineIndex] = line;
+    //clears the FIGure down to its prefix, keeping the line buffers so they can be reused
+    void restart(String prefix){
+        for (FIGureLine line : this.lines) {
+            line.content.setLength(0);
+            line.content.append(prefix);
+            line.rightSpaces = 0;
+        }
+        this.trailingCharacter = null;
+        this.characterCount = 0;
+    }
+
+    int getCharacterCount(){ return this.characterCount; }
+
+    //index of the appended character covering column, where characters overlap the later one wins, -1 before the first
+    int getCharacterAt(int column){
+        int low = 0;
+        int high = this.characterCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.glyphStarts[middle] <= column)
+                low = middle + 1;
+            else
+                high = middle - 1;
         }
+        return high;
+    }
+
+    //width of the widest line including prefix and trailing spaces
+    int getWidth(){
+        int width = 0;
+        for (FIGureLine line : this.lines)
+            width = Math.max(width, line.content.length() + line.rightSpaces);
+        return width;
     }
 
     void append(FIGCharacter figCharacter){
         append(figCharacter, 0);
     }
 
-    void fittedAppend(FIGCharacter figCharacter){
-        int overlapAmount = this.getMinimumAdjacentSpace(figCharacter);
+    void fittedAppend(FIGCharacter figCharacter, KerningTable kerningTable){
+        if (this.characterCount == 0) {
+            this.append(figCharacter, 0); //the first character keeps its leading spaces
+            return;
+        }
+        int pair = KerningTable.pairOf(this.trailingCharacter, figCharacter);
+        int overlapAmount = pair >= 0
+            ? this.getBlankLineAdjacentSpace(figCharacter, kerningTable.fittedOverlap(pair, this.trailingCharacter, figCharacter))
+            : this.getMinimumAdjacentSpace(figCharacter);
         this.append(figCharacter, overlapAmount);
     }
 
-    void smushAppend(FIGCharacter figCharacter, ISmushFunction smushFunction){
-        int overlapAmount = this.getMinimumAdjacentSpace(figCharacter) + 1;
-        HashMap<Integer, char[]> subcharacterOverlaps = this.getSubcharacterOverlaps(figCharacter, overlapAmount);
-        Option<HashMap<Integer, Character>> smushResults = this.trySmushOverlaps(subcharacterOverlaps, smushFunction);
-        if (smushResults.isPresent()){
-            FIGCharacter smushedCharacter = figCharacter.applySmushing(smushResults.get());
-            this.append(smushedCharacter, overlapAmount);
+    void smushAppend(FIGCharacter figCharacter, KerningTable kerningTable){
+        if (this.characterCount == 0) {
+            this.append(figCharacter, 0); //the first character keeps its leading spaces
+            return;
+        }
+        ICharSmushFunction smushFunction = kerningTable.getSmushFunction();
+        int pair = KerningTable.pairOf(this.trailingCharacter, figCharacter);
+        boolean smushed;
+        int overlapAmount;
+        if (pair >= 0) {
+            FIGCharacter leftCharacter = this.trailingCharacter;
+            int tableOverlap = kerningTable.fittedOverlap(pair, leftCharacter, figCharacter);
+            overlapAmount = this.getBlankLineAdjacentSpace(figCharacter, tableOverlap) + 1;
+            if (overlapAmount - 1 == tableOverlap) {
+                //table holds the smush results of the left character's lines, only its blank lines are smushed here
+                smushed = kerningTable.copySmushResults(pair, leftCharacter, figCharacter, this.smushedChars);
+                for (int blankIndex = 0; smushed && blankIndex < leftCharacter.blankLines.length; blankIndex++)
+                    smushed = this.trySmushLine(leftCharacter.blankLines[blankIndex], figCharacter, overlapAmount, smushFunction);
+            } else {
+                smushed = this.trySmushOverlaps(figCharacter, overlapAmount, smushFunction);
+            }
         } else {
-            //failed smush, default to fitted append
-            this.append(figCharacter, overlapAmount - 1);
+            overlapAmount = this.getMinimumAdjacentSpace(figCharacter) + 1;
+            smushed = this.trySmushOverlaps(figCharacter, overlapAmount, smushFunction);
         }
+
+        //failed smush, default to fitted append
+        this.append(figCharacter, smushed ? overlapAmount : overlapAmount - 1);
     }
 
-    private HashMap<Integer, char[]> getSubcharacterOverlaps(FIGCharacter figCharacter, int overlapAmount){
-        HashMap<Integer, char[]> overlaps = new HashMap<>();
-        for (int lineIndex = 0; lineIndex < figCharacter.height; lineIndex++){
-            FIGureLine figureLine = this.lines[lineIndex];
-            FIGCharacter.FIGCharacterLine figCharacterLine = figCharacter.lines[lineIndex];
-            if (figureLine.rightSpaces + figCharacterLine.leftSpaces < overlapAmount){
-                char leftChar = figureLine.content.charAt(figureLine.content.length()-1);
-                char rightChar = figCharacterLine.content.charAt(0);
-                overlaps.put(lineIndex, new char[]{ leftChar, rightChar});
-            }
-        }
-        return overlaps;
+    //stores the smushed sub-character of every overlapping line in smushedChars, fails if any line can't be smushed
+    private boolean trySmushOverlaps(FIGCharacter figCharacter, int overlapAmount, ICharSmushFunction smushFunction){
+        for (int lineIndex = 0; lineIndex < this.lines.length; lineIndex++)
+            if (!this.trySmushLine(lineIndex, figCharacter, overlapAmount, smushFunction))
+                return false; //entire figCharacter smush failure, use fitting instead
+        return true; //all subcharacter smushes successful
     }
 
-    private Option<HashMap<Integer, Character>> trySmushOverlaps(HashMap<Integer, char[]> overlaps, ISmushFunction smushFunction){
-        HashMap<Integer, Character> smushResults = new HashMap<>();
-        for(int lineIndex : overlaps.keySet()){
-            char[] nextOverlap = overlaps.get(lineIndex);
-            Option<Character> possibleSmush = smushFunction.trySmush(nextOverlap[0], nextOverlap[1]);
-            if (possibleSmush.isPresent()){
-                smushResults.put(lineIndex, possibleSmush.get()); //successful smush
-            } else {
-                return Option.empty(); //entire figCharacter smush failure, use fitting instead
-            }
-        }
-        return Option.of(smushResults); //all subcharacter smushes successful
+    private boolean trySmushLine(int lineIndex, FIGCharacter figCharacter, int overlapAmount, ICharSmushFunction smushFunction){
+        FIGureLine figureLine = this.lines[lineIndex];
+        this.smushedChars[lineIndex] = SmushRules.NO_SMUSH;
+        if (figCharacter.isEmpty(lineIndex))
+            return figureLine.rightSpaces + figCharacter.rightSpaces(lineIndex) >= overlapAmount; //blank lines can only overlap spaces
+        if (figureLine.rightSpaces + figCharacter.leftSpaces(lineIndex) >= overlapAmount)
+            return true; //sub-characters don't overlap on this line
+
+        int lastIndex = figureLine.content.length() - 1;
+        if (lastIndex < 0)
+            return false; //nothing to smush into
+
+        char smushedChar = smushFunction.smush(figureLine.content.charAt(lastIndex), figCharacter.firstChar(lineIndex));
+        this.smushedChars[lineIndex] = smushedChar;
+        return smushedChar != SmushRules.NO_SMUSH;
     }
 
-    //if there is an overlap, existing figure characters are replaced
+    //if there is an overlap, the overlapped sub-character is replaced in place with the smush result
     private void append(FIGCharacter figCharacter, int overlapAmount){
+        if (this.characterCount == this.glyphStarts.length)
+            this.glyphStarts = Arrays.copyOf(this.glyphStarts, this.characterCount * 2);
+        this.glyphStarts[this.characterCount] = this.lines[0].content.length() + this.lines[0].rightSpaces - overlapAmount;
+        this.trailingCharacter = figCharacter;
+        this.characterCount++;
         for(int lineIndex = 0; lineIndex < this.lines.length; lineIndex++){
             FIGureLine figureLine = this.lines[lineIndex];
-            FIGCharacter.FIGCharacterLine figCharacterLine = figCharacter.lines[lineIndex];
 
-            if (figCharacterLine.isEmpty()) {
+            if (figCharacter.isEmpty(lineIndex)) {
                 //only need to update line spacing meta
-                figureLine.rightSpaces += figCharacterLine.rightSpaces - overlapAmount;
+                figureLine.rightSpaces += figCharacter.rightSpaces(lineIndex) - overlapAmount;
             } else {
-                //handle overlap deletions or fill in dead space
-                int spaceAdjustedOverlap = overlapAmount - (figureLine.rightSpaces + figCharacterLine.leftSpaces);
+                //handle smushed overlap or fill in dead space
+                int spaceAdjustedOverlap = overlapAmount - (figureLine.rightSpaces + figCharacter.leftSpaces(lineIndex));
                 if (spaceAdjustedOverlap > 0) {
-                    int lastIndex = figureLine.content.length();
-                    figureLine.content.delete(lastIndex - spaceAdjustedOverlap, lastIndex);
+                    //only a smushed append overlaps, and then by exactly one sub-character
+                    figureLine.content.setCharAt(figureLine.content.length() - 1, this.smushedChars[lineIndex]);
+                    figCharacter.appendContent(figureLine.content, lineIndex, 1);
+                    if (figCharacter.contentLength(lineIndex) == 1)
+                        this.trailingCharacter = null; //line now ends with the smushed sub-character
                 } else {
-                    figureLine.content.append(Utils.repeatString(" ", -spaceAdjustedOverlap));
+                    Utils.appendRepeated(figureLine.content, ' ', -spaceAdjustedOverlap);
+                    figCharacter.appendContent(figureLine.content, lineIndex, 0);
                 }
 
-                //append content
-                figureLine.content.append(figCharacterLine.content);
-
                 //update line spacing meta
-                figureLine.rightSpaces = figCharacterLine.rightSpaces;
+                figureLine.rightSpaces = figCharacter.rightSpaces(lineIndex);
             }
         }
     }
 
+    //lowers a KerningTable overlap to account for the lines where the trailing character is blank
+    private int getBlankLineAdjacentSpace(FIGCharacter figCharacter, int minAdjacentSpace){
+        for (int lineIndex : this.trailingCharacter.blankLines) {
+            int adjacentLineSpace = this.lines[lineIndex].rightSpaces + figCharacter.leftSpaces(lineIndex);
+            minAdjacentSpace = minAdjacentSpace > adjacentLineSpace ? adjacentLineSpace : minAdjacentSpace;
+        }
+        return minAdjacentSpace;
+    }
+
     private int getMinimumAdjacentSpace(FIGCharacter figCharacter){
-        int minAdjacentSpace = this.lines[0].rightSpaces + figCharacter.lines[0].leftSpaces;
+        int minAdjacentSpace = this.lines[0].rightSpaces + figCharacter.leftSpaces(0);
         for(int lineIndex = 1; lineIndex < this.lines.length; lineIndex++){
-            int adjacentLineSpace = this.lines[lineIndex].rightSpaces + figCharacter.lines[lineIndex].leftSpaces;
+            int adjacentLineSpace = this.lines[lineIndex].rightSpaces + figCharacter.leftSpaces(lineIndex);
             minAdjacentSpace = minAdjacentSpace > adjacentLineSpace ? adjacentLineSpace : minAdjacentSpace;
         }
         return minAdjacentSpace;
     }
 
-    String toString(char hardBlank){
-        StringBuilder returnString = new StringBuilder();
-        for(FIGureLine fiGureLine : this.lines) {
-            String formattedLine = fiGureLine.content.toString().replace(hardBlank, ' ')
-                                    + Utils.repeatString(" ", fiGureLine.rightSpaces)
-                                    + "\n";
-            returnString.append(formattedLine);
+    //saves the line state so later appends can be undone with reset
+    void mark(Mark mark){
+        for (int lineIndex = 0; lineIndex < this.lines.length; lineIndex++) {
+            FIGureLine figureLine = this.lines[lineIndex];
+            int contentLength = figureLine.content.length();
+            mark.contentLengths[lineIndex] = contentLength;
+            mark.lastChars[lineIndex] = contentLength > 0 ? figureLine.content.charAt(contentLength - 1) : ' ';
+            mark.rightSpaces[lineIndex] = figureLine.rightSpaces;
+        }
+        mark.trailingCharacter = this.trailingCharacter;
+        mark.characterCount = this.characterCount;
+    }
+
+    //undoes every append made since mark was saved
+    //appends only ever grow a line or smush its last sub-character, so restoring that one sub-character is enough
+    void reset(Mark mark){
+        for (int lineIndex = 0; lineIndex < this.lines.length; lineIndex++) {
+            FIGureLine figureLine = this.lines[lineIndex];
+            int contentLength = mark.contentLengths[lineIndex];
+            figureLine.content.setLength(contentLength);
+            if (contentLength > 0)
+                figureLine.content.setCharAt(contentLength - 1, mark.lastChars[lineIndex]);
+            figureLine.rightSpaces = mark.rightSpaces[lineIndex];
         }
-        if(returnString.length() > 0)
-            returnString.deleteCharAt(returnString.length()-1);
-        return returnString.toString();
+        this.trailingCharacter = mark.trailingCharacter;
+        this.characterCount = mark.characterCount;
     }
 
     class FIGureLine {
@@ -126,4 +209,19 @@ class FIGure {
 
         private FIGureLine(){}
     }
+
+    //line state saved by mark, reusable for any FIGure of the same height
+    static class Mark {
+        private final int[] contentLengths;
+        private final char[] lastChars;
+        private final int[] rightSpaces;
+        private FIGCharacter trailingCharacter;
+        private int characterCount;
+
+        Mark(int height){
+            this.contentLengths = new int[height];
+            this.lastChars = new char[height];
+            this.rightSpaces = new int[height];
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Builds a FIGure one character at a time, for live previews and streamed input.
+ * <p>
+ * Appending or removing a character only touches the last row, so its cost depends on the font height and not on how
+ * much text came before. The text so far can be rendered at any time and renders exactly like
+ * {@link FIGRenderer#render(String, FIGOptions)} would render it. Obtained from {@link FIGRenderer#newBuilder(FIGOptions)}.
+ * </p>
+ * <p>
+ * A FIGureBuilder isn't thread safe. Rows aren't wrapped and are laid out left to right, so options with a width or
+ * a right to left print direction aren't accepted.
+ * </p>
+ */
+public final class FIGureBuilder {
+    private final FIGRenderer renderer;
+    private final FIGRenderer.CompiledLayout layout;
+    private final FIGCharacter fallback;
+    private final char hardBlank;
+    private final int height;
+    private final FIGParagraph paragraph;
+    private final FIGOptions options;
+    private FIGure row;
+
+    //one checkpoint per appended character other than newlines and a '\r' ending a row, popped checkpoints are kept for reuse
+    private final ArrayList<FIGure.Mark> marks = new ArrayList<>();
+    private int markCount = 0;
+    private int[] codePoints = new int[16];
+    private int length = 0;
+
+    FIGureBuilder(FIGRenderer renderer, FIGRenderer.CompiledLayout layout, FIGCharacter fallback, char hardBlank, int height, FIGOptions options){
+        this.renderer = renderer;
+        this.layout = layout;
+        this.fallback = fallback;
+        this.hardBlank = hardBlank;
+        this.height = height;
+        this.options = options;
+        this.paragraph = new FIGParagraph(height);
+        this.clear();
+    }
+
+    /**
+     * Appends one character, '\n' starts a new row and like in {@link FIGRenderer#render(String, FIGOptions)} a '\r'
+     * right before it is dropped
+     *
+     * @param codePoint
+     * @return this builder
+     */
+    public FIGureBuilder append(int codePoint){
+        if (this.length == this.codePoints.length)
+            this.codePoints = Arrays.copyOf(this.codePoints, this.length * 2);
+        this.codePoints[this.length++] = codePoint;
+
+        if (codePoint == '\n') {
+            if (this.endsWithCarriageReturn(this.length - 1))
+                this.row.reset(this.marks.get(--this.markCount)); //a '\r' ending a line isn't rendered
+            this.row = this.paragraph.addRow();
+            return this;
+        }
+        this.render(codePoint);
+        return this;
+    }
+
+    /**
+     * Appends every character of text, surrogate pairs are appended as one character
+     *
+     * @param text
+     * @return this builder
+     */
+    public FIGureBuilder append(CharSequence text){
+        for (int textIndex = 0; textIndex < text.length(); ) {
+            int codePoint = Character.codePointAt(text, textIndex);
+            this.append(codePoint);
+            textIndex += Character.charCount(codePoint);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the last appended character, restoring the FIGure to its state before that append
+     *
+     * @return the removed code point
+     * @throws IllegalStateException if the builder is empty
+     */
+    public int removeLast(){
+        if (this.length == 0)
+            throw new IllegalStateException("Nothing to remove");
+        int codePoint = this.codePoints[--this.length];
+        if (codePoint == '\n') {
+            this.paragraph.removeLastRow();
+            this.row = this.paragraph.getRow(this.paragraph.getRowCount() - 1);
+            if (this.endsWithCarriageReturn(this.length))
+                this.render('\r'); //it ends the text now, so it's rendered again
+        } else {
+            this.row.reset(this.marks.get(--this.markCount));
+        }
+        return codePoint;
+    }
+
+    private void render(int codePoint){
+        if (this.markCount == this.marks.size())
+            this.marks.add(new FIGure.Mark(this.height));
+        this.row.mark(this.marks.get(this.markCount++));
+        this.renderer.append(this.row, codePoint, this.layout, this.fallback);
+    }
+
+    private boolean endsWithCarriageReturn(int textLength){
+        return textLength > 0 && this.codePoints[textLength - 1] == '\r';
+    }
+
+    /**
+     * Removes every character, keeping the buffers for reuse
+     */
+    public void clear(){
+        this.paragraph.clear(this.options, this.hardBlank, this.layout.verticalStacker);
+        this.row = this.paragraph.addRow();
+        this.markCount = 0;
+        this.length = 0;
+    }
+
+    /**
+     * @return number of characters appended and not removed, counting a surrogate pair as one
+     */
+    public int length(){ return this.length; }
+
+    /**
+     * @return the characters appended and not removed
+     */
+    public String getText(){ return new String(this.codePoints, 0, this.length); }
+
+    /**
+     * @return size of the FIGure of the text so far, without rendering it
+     */
+    public FIGSize measure(){ return this.paragraph.measure(); }
+
+    /**
+     * Writes the FIGure of the text so far to out
+     *
+     * @param out any Appendable, for example a StringBuilder or a Writer
+     * @throws IOException if out fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        this.paragraph.writeTo(out);
+    }
+
+    /**
+     * @return the FIGure of the text so far
+     */
+    @Override
+    public String toString(){
+        return this.paragraph.toString();
+    }
+}
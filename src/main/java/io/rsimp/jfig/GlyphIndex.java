@@ -0,0 +1,98 @@
+package io.rsimp.jfig;
+
+import java.util.Arrays;
+
+//maps code points to glyph ids without boxing
+//Latin-1 is looked up directly in an array, other code points in an open addressing table with linear probing
+class GlyphIndex {
+    static final int NO_GLYPH = -1;
+
+    private static final int DENSE_RANGE = 256;
+    private static final int INITIAL_CAPACITY = 16; //power of two
+
+    private final int[] dense = newGlyphIds(DENSE_RANGE);
+    private int[] sparseKeys = new int[INITIAL_CAPACITY];
+    private int[] sparseValues = newGlyphIds(INITIAL_CAPACITY); //NO_GLYPH marks a free slot
+    private int sparseCount = 0;
+    private int size = 0;
+
+    //returns the glyph id of the code point, or NO_GLYPH when the font doesn't have it
+    int get(int codePoint){
+        if (codePoint >= 0 && codePoint < DENSE_RANGE)
+            return this.dense[codePoint];
+        int mask = this.sparseKeys.length - 1;
+        for (int slot = hash(codePoint) & mask; this.sparseValues[slot] != NO_GLYPH; slot = (slot + 1) & mask)
+            if (this.sparseKeys[slot] == codePoint)
+                return this.sparseValues[slot];
+        return NO_GLYPH;
+    }
+
+    //adds or replaces the glyph id of a code point
+    void put(int codePoint, int glyphId){
+        if (codePoint >= 0 && codePoint < DENSE_RANGE) {
+            if (this.dense[codePoint] == NO_GLYPH)
+                this.size++;
+            this.dense[codePoint] = glyphId;
+            return;
+        }
+        if ((this.sparseCount + 1) * 2 > this.sparseKeys.length)
+            this.resize(this.sparseKeys.length * 2); //keep the table at most half full so probes stay short
+        if (this.putSparse(codePoint, glyphId)) {
+            this.sparseCount++;
+            this.size++;
+        }
+    }
+
+    int size(){ return this.size; }
+
+    //every code point with a glyph, in no particular order
+    int[] getCodePoints(){
+        int[] codePoints = new int[this.size];
+        int index = 0;
+        for (int codePoint = 0; codePoint < DENSE_RANGE; codePoint++)
+            if (this.dense[codePoint] != NO_GLYPH)
+                codePoints[index++] = codePoint;
+        for (int slot = 0; slot < this.sparseKeys.length; slot++)
+            if (this.sparseValues[slot] != NO_GLYPH)
+                codePoints[index++] = this.sparseKeys[slot];
+        return codePoints;
+    }
+
+    //returns true when the code point wasn't in the table yet
+    private boolean putSparse(int codePoint, int glyphId){
+        int mask = this.sparseKeys.length - 1;
+        int slot = hash(codePoint) & mask;
+        while (this.sparseValues[slot] != NO_GLYPH) {
+            if (this.sparseKeys[slot] == codePoint) {
+                this.sparseValues[slot] = glyphId;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.sparseKeys[slot] = codePoint;
+        this.sparseValues[slot] = glyphId;
+        return true;
+    }
+
+    private void resize(int capacity){
+        int[] oldKeys = this.sparseKeys;
+        int[] oldValues = this.sparseValues;
+        this.sparseKeys = new int[capacity];
+        this.sparseValues = newGlyphIds(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++)
+            if (oldValues[slot] != NO_GLYPH)
+                this.putSparse(oldKeys[slot], oldValues[slot]);
+    }
+
+    private static int[] newGlyphIds(int length){
+        int[] glyphIds = new int[length];
+        Arrays.fill(glyphIds, NO_GLYPH);
+        return glyphIds;
+    }
+
+    //spreads nearby code points, which are common in a font's code tags, across the table
+    private static int hash(int codePoint){
+        int hash = codePoint * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
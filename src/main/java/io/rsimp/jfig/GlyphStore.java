@@ -0,0 +1,110 @@
+package io.rsimp.jfig;
+
+import java.util.Arrays;
+
+//every glyph line of a font packed into flat arrays, indexed by glyph id * height + line number
+//lines are split into left spaces, content and right spaces, the content of all lines is stored back to back in one char array
+class GlyphStore {
+    final int height;
+    final int[] widths; //per glyph
+    final int[] leftSpaces; //per line, the width of the glyph for blank lines
+    final int[] rightSpaces; //per line, the width of the glyph for blank lines
+    final int[] contentLengths; //per line
+    final int[] contentOffsets; //per line, start of the line's content in content
+    final char[] content;
+
+    GlyphStore(int height, int[] widths, int[] leftSpaces, int[] rightSpaces, int[] contentLengths, char[] content){
+        this.height = height;
+        this.widths = widths;
+        this.leftSpaces = leftSpaces;
+        this.rightSpaces = rightSpaces;
+        this.contentLengths = contentLengths;
+        this.content = content;
+        this.contentOffsets = new int[contentLengths.length];
+        for (int lineIndex = 1; lineIndex < contentLengths.length; lineIndex++)
+            this.contentOffsets[lineIndex] = this.contentOffsets[lineIndex - 1] + contentLengths[lineIndex - 1];
+    }
+
+    int getGlyphCount(){ return this.widths.length; }
+
+    //packs glyphs as they are parsed, arrays grow by doubling and are trimmed by build
+    static class Builder {
+        private final int height;
+        private int glyphCount = 0;
+        private int contentLength = 0;
+        private int[] widths;
+        private int[] leftSpaces;
+        private int[] rightSpaces;
+        private int[] contentLengths;
+        private char[] content;
+
+        Builder(int height, int expectedGlyphs){
+            this.height = height;
+            this.widths = new int[expectedGlyphs];
+            this.leftSpaces = new int[expectedGlyphs * height];
+            this.rightSpaces = new int[expectedGlyphs * height];
+            this.contentLengths = new int[expectedGlyphs * height];
+            this.content = new char[expectedGlyphs * height * 8];
+        }
+
+        //adds a glyph from its lines in the font file, the first line's end marker sets the glyph width
+        //returns the glyph id
+        int add(String[] fontFileLines) throws FIGFontFormatException {
+            for (String line : fontFileLines)
+                if (line == null)
+                    throw new FIGFontFormatException("Unexpected end of font in a FIGcharacter");
+            if (fontFileLines[0].isEmpty())
+                throw new FIGFontFormatException("FIGcharacter line is missing its end marker");
+
+            if (this.glyphCount == this.widths.length) {
+                int capacity = Math.max(this.glyphCount * 2, 1);
+                this.widths = Arrays.copyOf(this.widths, capacity);
+                this.leftSpaces = Arrays.copyOf(this.leftSpaces, capacity * this.height);
+                this.rightSpaces = Arrays.copyOf(this.rightSpaces, capacity * this.height);
+                this.contentLengths = Arrays.copyOf(this.contentLengths, capacity * this.height);
+            }
+
+            String firstLine = fontFileLines[0];
+            char endMarker = firstLine.charAt(firstLine.length()-1);
+            int width = firstLine.length();
+            while (width > 0 && firstLine.charAt(width - 1) == endMarker) //strip line of end marker(s)
+                width--;
+            this.widths[this.glyphCount] = width;
+
+            int lineIndex = this.glyphCount * this.height;
+            for (String line : fontFileLines) {
+                if (line.length() < width)
+                    throw new FIGFontFormatException("FIGcharacter line is shorter than its first line: " + line);
+                int contentEnd = width;
+                while (contentEnd > 0 && line.charAt(contentEnd - 1) == ' ')
+                    contentEnd--;
+                int contentStart = 0;
+                while (contentStart < contentEnd && line.charAt(contentStart) == ' ')
+                    contentStart++;
+
+                boolean isBlank = contentStart == contentEnd;
+                this.leftSpaces[lineIndex] = isBlank ? width : contentStart;
+                this.rightSpaces[lineIndex] = width - contentEnd;
+                this.contentLengths[lineIndex] = contentEnd - contentStart;
+                if (this.contentLength + contentEnd - contentStart > this.content.length)
+                    this.content = Arrays.copyOf(this.content, Math.max(this.content.length * 2, this.contentLength + width));
+                line.getChars(contentStart, contentEnd, this.content, this.contentLength);
+                this.contentLength += contentEnd - contentStart;
+                lineIndex++;
+            }
+            return this.glyphCount++;
+        }
+
+        GlyphStore build(){
+            int lineCount = this.glyphCount * this.height;
+            return new GlyphStore(
+                this.height,
+                Arrays.copyOf(this.widths, this.glyphCount),
+                Arrays.copyOf(this.leftSpaces, lineCount),
+                Arrays.copyOf(this.rightSpaces, lineCount),
+                Arrays.copyOf(this.contentLengths, lineCount),
+                Arrays.copyOf(this.content, this.contentLength)
+            );
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.rsimp.jfig;
+
+import java.io.IOException;
+
+/**
+ * Writes FIGures as an HTML pre element, optionally colored.
+ * <p>
+ * Colored runs are wrapped in one span each, spaces join the run before them, so a FIGure colored by character needs
+ * about one span per FIGcharacter line rather than one per sub-character. Immutable and thread safe.
+ * </p>
+ */
+public final class HtmlOutputFormat implements FIGOutputFormat {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ColorGradient gradient;
+    private final String preClass;
+
+    /**
+     * Uncolored output, only escaped and wrapped in a pre element
+     */
+    public HtmlOutputFormat(){ this(null, null); }
+
+    /**
+     * @param gradient colors of the sub-characters, null for uncolored output
+     * @param preClass class attribute of the pre element, null for none
+     */
+    public HtmlOutputFormat(ColorGradient gradient, String preClass){
+        this.gradient = gradient;
+        this.preClass = preClass;
+    }
+
+    @Override
+    public Output open(final Appendable out, final FIGSize size, final int characterCount) throws IOException {
+        out.append("<pre");
+        if (this.preClass != null) {
+            out.append(" class=\"");
+            appendEscaped(out, this.preClass);
+            out.append('"');
+        }
+        out.append('>');
+        return new Output() {
+            @Override
+            public int getStyle(int line, int column, int character, char subCharacter){
+                if (gradient == null || subCharacter == ' ')
+                    return SAME_STYLE;
+                return gradient.getColor(column, character, size, characterCount);
+            }
+
+            @Override
+            public void writeRun(int style, CharSequence subCharacters) throws IOException {
+                if (style == SAME_STYLE) {
+                    appendEscaped(out, subCharacters);
+                    return;
+                }
+                out.append("<span style=\"color:#");
+                for (int shift = 20; shift >= 0; shift -= 4)
+                    out.append(HEX_DIGITS[style >> shift & 15]);
+                out.append("\">");
+                appendEscaped(out, subCharacters);
+                out.append("</span>");
+            }
+
+            @Override
+            public void writeLineBreak() throws IOException { out.append('\n'); }
+
+            @Override
+            public void close() throws IOException { out.append("</pre>"); }
+        };
+    }
+
+    private static void appendEscaped(Appendable out, CharSequence text) throws IOException {
+        int segmentStart = 0;
+        for (int charIndex = 0; charIndex < text.length(); charIndex++) {
+            String escaped;
+            switch (text.charAt(charIndex)) {
+                case '&': escaped = "&amp;"; break;
+                case '<': escaped = "&lt;"; break;
+                case '>': escaped = "&gt;"; break;
+                case '"': escaped = "&quot;"; break;
+                default: continue;
+            }
+            out.append(text, segmentStart, charIndex).append(escaped);
+            segmentStart = charIndex + 1;
+        }
+        out.append(text, segmentStart, text.length());
+    }
+}
@@ -0,0 +1,98 @@
+package io.rsimp.jfig;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import io.rsimp.jfig.SmushRules.ICharSmushFunction;
+
+//lazily computed overlap and smush results for every pair of printable ASCII FIGcharacters in a layout
+//entries only cover the lines where the left FIGcharacter has sub-characters, the FIGure resolves its blank lines
+//only valid when the left FIGcharacter is the last one appended to a FIGure
+class KerningTable {
+    static final int PAIR_RANGE = 95; //printable ASCII, the first required characters of every FIGfont
+
+    private static final int NOT_COMPUTED = 0;
+    private static final int UNBOUNDED_OVERLAP = 1 << 20; //left character is entirely blank
+
+    private final ICharSmushFunction smushFunction; //null unless the layout smushes
+    private final int height;
+    //packed as ((overlap << 1 | smushed) + 1), written after smushedRows so a read entry publishes them
+    private final AtomicIntegerArray entries = new AtomicIntegerArray(PAIR_RANGE * PAIR_RANGE);
+    //smushed sub-characters of every pair with the same left character, allocated when the first of them is computed
+    private final AtomicReferenceArray<char[]> smushedRows;
+
+    KerningTable(int height, ICharSmushFunction smushFunction){
+        this.height = height;
+        this.smushFunction = smushFunction;
+        this.smushedRows = smushFunction != null
+            ? new AtomicReferenceArray<char[]>(PAIR_RANGE)
+            : null;
+    }
+
+    ICharSmushFunction getSmushFunction(){ return this.smushFunction; }
+
+    //returns the table index of the pair or -1 if the pair isn't covered by the table
+    static int pairOf(FIGCharacter left, FIGCharacter right){
+        if (left == null || left.pairIndex < 0 || right.pairIndex < 0)
+            return -1;
+        return left.pairIndex * PAIR_RANGE + right.pairIndex;
+    }
+
+    //fitted overlap of the pair, the minimum space between the two characters across the left character's non blank lines
+    int fittedOverlap(int pair, FIGCharacter left, FIGCharacter right){
+        return this.entry(pair, left, right) >> 1;
+    }
+
+    //copies the smushed sub-characters of the pair into smushResults, fails if the pair can't be smushed
+    //only valid when the FIGure's blank lines don't reduce the overlap below fittedOverlap
+    boolean copySmushResults(int pair, FIGCharacter left, FIGCharacter right, char[] smushResults){
+        if ((this.entry(pair, left, right) & 1) == 0)
+            return false;
+        System.arraycopy(this.smushedRows.get(pair / PAIR_RANGE), pair % PAIR_RANGE * this.height, smushResults, 0, this.height);
+        return true;
+    }
+
+    private int entry(int pair, FIGCharacter left, FIGCharacter right){
+        int entry = this.entries.get(pair);
+        if (entry == NOT_COMPUTED) {
+            entry = this.computeEntry(pair, left, right) + 1;
+            this.entries.set(pair, entry); //racing threads compute the same value
+        }
+        return entry - 1;
+    }
+
+    private int computeEntry(int pair, FIGCharacter left, FIGCharacter right){
+        int overlapAmount = UNBOUNDED_OVERLAP;
+        for (int lineIndex = 0; lineIndex < this.height; lineIndex++)
+            if (!left.isEmpty(lineIndex))
+                overlapAmount = Math.min(overlapAmount, left.rightSpaces(lineIndex) + right.leftSpaces(lineIndex));
+
+        if (this.smushFunction == null)
+            return overlapAmount << 1;
+
+        char[] smushedRow = this.smushedRow(pair / PAIR_RANGE);
+        int smushOffset = pair % PAIR_RANGE * this.height;
+        for (int lineIndex = 0; lineIndex < this.height; lineIndex++){
+            char smushedChar = SmushRules.NO_SMUSH;
+            if (!left.isEmpty(lineIndex) && right.isEmpty(lineIndex) && left.rightSpaces(lineIndex) + right.rightSpaces(lineIndex) == overlapAmount)
+                return overlapAmount << 1; //blank lines can only overlap spaces, smushing would need one more
+            if (!left.isEmpty(lineIndex) && !right.isEmpty(lineIndex) && left.rightSpaces(lineIndex) + right.leftSpaces(lineIndex) == overlapAmount){
+                smushedChar = this.smushFunction.smush(left.lastChar(lineIndex), right.firstChar(lineIndex));
+                if (smushedChar == SmushRules.NO_SMUSH)
+                    return overlapAmount << 1; //pair can only be fitted
+            }
+            smushedRow[smushOffset + lineIndex] = smushedChar;
+        }
+        return overlapAmount << 1 | 1;
+    }
+
+    private char[] smushedRow(int leftIndex){
+        char[] smushedRow = this.smushedRows.get(leftIndex);
+        if (smushedRow == null) {
+            //racing threads may allocate the same row, only one is kept
+            smushedRow = new char[PAIR_RANGE * this.height];
+            if (!this.smushedRows.compareAndSet(leftIndex, null, smushedRow))
+                smushedRow = this.smushedRows.get(leftIndex);
+        }
+        return smushedRow;
+    }
+}
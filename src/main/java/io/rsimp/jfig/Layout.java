@@ -14,6 +14,10 @@ class Layout {
     }
 
     static Layout fromOldMask(int oldLayoutMask){
+        return new Layout(fullMaskFromOldMask(oldLayoutMask));
+    }
+
+    static int fullMaskFromOldMask(int oldLayoutMask){
         int convertedLayout = oldLayoutMask;
         if (convertedLayout > 0)
             convertedLayout += 128; //controlled smushing (old layout doesn't have universal)
@@ -21,7 +25,14 @@ class Layout {
             convertedLayout = 64; //kerning
         else if (convertedLayout < 0)
             convertedLayout = 0; //full size
-        return new Layout(convertedLayout);
+        return convertedLayout;
+    }
+
+    //clears the rule bits of modes that don't smush, masks equal after this lay out the same
+    static int canonicalMask(int fullLayoutMask){
+        int horizontal = (fullLayoutMask & 128) == 128 ? fullLayoutMask & (128 + 63) : fullLayoutMask & 64;
+        int vertical = (fullLayoutMask & 16384) == 16384 ? fullLayoutMask & (16384 + 7936) : fullLayoutMask & 8192;
+        return horizontal | vertical;
     }
 
     class HorizontalLayout{
@@ -1,27 +1,34 @@
 package io.rsimp.jfig;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 
 //read about standard smushing rules here: http://www.jave.de/figlet/figfont.html#smushingrules
 public class SmushRules {
+    /**
+     * Sentinel returned by the primitive smush rules and {@link ICharSmushFunction} when two sub-characters can't be smushed.
+     * <p>
+     * U+FFFF is a Unicode noncharacter so it never appears as a sub-character in a FIGfont.
+     * </p>
+     */
+    public static final char NO_SMUSH = '\uFFFF';
+
     /**
      * Equal character smush rule (1):
      * <p>
      * Two sub-characters are smushed into a single sub-character if they are the same. This rule does not smush hardblanks.
      * </p>
      */
-    public static ISmushFunction EqualCharacterRule = (char firstChar, char secondChar) -> {
-        if (firstChar == secondChar)
-            return Option.of(firstChar);
-        return Option.empty();
-    };
+    public static ISmushFunction EqualCharacterRule = (char firstChar, char secondChar) ->
+        toOption(equalCharacter(firstChar, secondChar));
 
-    private static HashSet<Character> underscoreReplacers = new HashSet<Character>(Arrays.asList(
-            '|', '/', '\\', '[', ']', '{', '}', '(', ')', '<', '>'
-    ));
+    /**
+     * Primitive form of {@link #EqualCharacterRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char equalCharacter(char firstChar, char secondChar){
+        return firstChar == secondChar ? firstChar : NO_SMUSH;
+    }
 
     /**
      * Underscore smush rule (2):
@@ -29,22 +36,33 @@ public class SmushRules {
      * An underscore ("_") will be replaced by any of: "|", "/", "\", "[", "]", "{", "}", "(", ")", "<" or ">".
      * </p>
      */
-    public static ISmushFunction UnderscoreRule = (char firstChar, char secondChar) -> {
-        if (firstChar == '_' && underscoreReplacers.contains(secondChar))
-            return Option.of(secondChar);
-        else if (secondChar == '_' && underscoreReplacers.contains(firstChar))
-            return Option.of(firstChar);
-        return Option.empty();
-    };
+    public static ISmushFunction UnderscoreRule = (char firstChar, char secondChar) ->
+        toOption(underscore(firstChar, secondChar));
+
+    /**
+     * Primitive form of {@link #UnderscoreRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char underscore(char firstChar, char secondChar){
+        //the underscore replacers are exactly the characters in the hierarchy classes
+        if (firstChar == '_' && hierarchyClass(secondChar) > 0)
+            return secondChar;
+        else if (secondChar == '_' && hierarchyClass(firstChar) > 0)
+            return firstChar;
+        return NO_SMUSH;
+    }
 
-    private static HashMap<Character, Integer> charHierarchy = new HashMap<>();
-    static {
-        charHierarchy.put('|', 1);
-        charHierarchy.put('/', 2); charHierarchy.put('\\', 2);
-        charHierarchy.put('[', 3); charHierarchy.put(']', 3);
-        charHierarchy.put('{', 4); charHierarchy.put('}', 4);
-        charHierarchy.put('(', 5); charHierarchy.put(')', 5);
-        charHierarchy.put('<', 6); charHierarchy.put('>', 6);
+    private static int hierarchyClass(char subCharacter){
+        switch (subCharacter) {
+            case '|': return 1;
+            case '/': case '\\': return 2;
+            case '[': case ']': return 3;
+            case '{': case '}': return 4;
+            case '(': case ')': return 5;
+            case '<': case '>': return 6;
+            default: return 0;
+        }
     }
 
     /**
@@ -53,23 +71,24 @@ public class SmushRules {
      * A hierarchy of six classes is used: "|", "/\", "[]", "{}", "()", and "<>". When two smushing sub-characters are from different classes, the one from the latter class will be used.
      * </p>
      */
-    public static ISmushFunction HierarchicalRule = (char firstChar, char secondChar) -> {
-        if (charHierarchy.containsKey(firstChar) && charHierarchy.containsKey(secondChar)){
-            int firstCharLevel = charHierarchy.get(firstChar);
-            int secondCharLevel = charHierarchy.get(secondChar);
+    public static ISmushFunction HierarchicalRule = (char firstChar, char secondChar) ->
+        toOption(hierarchical(firstChar, secondChar));
+
+    /**
+     * Primitive form of {@link #HierarchicalRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char hierarchical(char firstChar, char secondChar){
+        int firstCharLevel = hierarchyClass(firstChar);
+        int secondCharLevel = hierarchyClass(secondChar);
+        if (firstCharLevel > 0 && secondCharLevel > 0){
             if (firstCharLevel > secondCharLevel)
-                return Option.of(firstChar);
+                return firstChar;
             else if (secondCharLevel > firstCharLevel)
-                return Option.of(secondChar);
+                return secondChar;
         }
-        return Option.empty();
-    };
-
-    private static HashMap<Character, Character> charPairs = new HashMap<>();
-    static {
-        charPairs.put('[', ']'); charPairs.put(']', '[');
-        charPairs.put('{', '}'); charPairs.put('}', '{');
-        charPairs.put('(', ')'); charPairs.put(')', '(');
+        return NO_SMUSH;
     }
 
     /**
@@ -78,12 +97,25 @@ public class SmushRules {
      * Smushes opposing brackets ("[]" or "]["), braces ("{}" or "}{") and parentheses ("()" or ")(") together, replacing any such pair with a vertical bar ("|").
      * </p>
      */
-    public static ISmushFunction OppositePairRule = (char firstChar, char secondChar) -> {
-        if (charPairs.containsKey(firstChar) && charPairs.get(firstChar) == secondChar)
-            return Option.of('|');
-        return Option.empty();
-    };
+    public static ISmushFunction OppositePairRule = (char firstChar, char secondChar) ->
+        toOption(oppositePair(firstChar, secondChar));
 
+    /**
+     * Primitive form of {@link #OppositePairRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char oppositePair(char firstChar, char secondChar){
+        switch (firstChar) {
+            case '[': return secondChar == ']' ? '|' : NO_SMUSH;
+            case ']': return secondChar == '[' ? '|' : NO_SMUSH;
+            case '{': return secondChar == '}' ? '|' : NO_SMUSH;
+            case '}': return secondChar == '{' ? '|' : NO_SMUSH;
+            case '(': return secondChar == ')' ? '|' : NO_SMUSH;
+            case ')': return secondChar == '(' ? '|' : NO_SMUSH;
+            default: return NO_SMUSH;
+        }
+    }
 
     /**
      * Big X smush rule (5):
@@ -91,16 +123,23 @@ public class SmushRules {
      * Smushes "/\" into "|", "\/" into "Y", and "><" into "X". Note that "<>" is not smushed in any way by this rule. The name "BIG X" is historical; originally all three pairs were smushed into "X".
      * </p>
      */
-    public static ISmushFunction BigXRule = (char firstChar, char secondChar) -> {
-        String combined = "" + firstChar + secondChar;
-        if (combined.equals("/\\"))
-            return Option.of('|');
-        if (combined.equals("\\/"))
-            return Option.of('Y');
-        if (combined.equals("><"))
-            return Option.of('X');
-        return Option.empty();
-    };
+    public static ISmushFunction BigXRule = (char firstChar, char secondChar) ->
+        toOption(bigX(firstChar, secondChar));
+
+    /**
+     * Primitive form of {@link #BigXRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char bigX(char firstChar, char secondChar){
+        if (firstChar == '/' && secondChar == '\\')
+            return '|';
+        if (firstChar == '\\' && secondChar == '/')
+            return 'Y';
+        if (firstChar == '>' && secondChar == '<')
+            return 'X';
+        return NO_SMUSH;
+    }
 
     /**
      * Hard blank smush rule (6):
@@ -108,11 +147,55 @@ public class SmushRules {
      * Smushes two hardblanks together, replacing them with a single hardblank.
      * </p>
      */
-    public static IHardBlankSmushFunction HardblankRule = (char firstChar, char secondChar, char hardBlank) -> {
-        if (firstChar == hardBlank && secondChar == hardBlank)
-            return Option.of(hardBlank);
-        return Option.empty();
-    };
+    public static IHardBlankSmushFunction HardblankRule = (char firstChar, char secondChar, char hardBlank) ->
+        toOption(hardblank(firstChar, secondChar, hardBlank));
+
+    /**
+     * Primitive form of {@link #HardblankRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char hardblank(char firstChar, char secondChar, char hardBlank){
+        return firstChar == hardBlank && secondChar == hardBlank ? hardBlank : NO_SMUSH;
+    }
+
+    /**
+     * Horizontal line smush rule (vertical rule 4):
+     * <p>
+     * Smushes stacked pairs of "-" and "_" into a single "=" sub-character. It does not matter which is found above the other.
+     * </p>
+     */
+    public static ISmushFunction HorizontalLineRule = (char firstChar, char secondChar) ->
+        toOption(horizontalLine(firstChar, secondChar));
+
+    /**
+     * Primitive form of {@link #HorizontalLineRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char horizontalLine(char firstChar, char secondChar){
+        if ((firstChar == '-' && secondChar == '_') || (firstChar == '_' && secondChar == '-'))
+            return '=';
+        return NO_SMUSH;
+    }
+
+    /**
+     * Vertical line supersmushing rule (vertical rule 5):
+     * <p>
+     * Smushes stacked vertical bars ("|") into a single vertical bar. Unlike the other rules, rows may keep moving closer after these have been smushed.
+     * </p>
+     */
+    public static ISmushFunction VerticalLineRule = (char firstChar, char secondChar) ->
+        toOption(verticalLine(firstChar, secondChar));
+
+    /**
+     * Primitive form of {@link #VerticalLineRule}
+     *
+     * @return the smushed sub-character or {@link #NO_SMUSH}
+     */
+    public static char verticalLine(char firstChar, char secondChar){
+        return firstChar == '|' && secondChar == '|' ? '|' : NO_SMUSH;
+    }
 
     /**
      * Universal smush rule part 2:
@@ -121,9 +204,16 @@ public class SmushRules {
      * </p>
      */
     public static ISmushFunction universalSmush(char hardBlank){
-        return (char firstChar, char secondChar) -> secondChar == hardBlank
-            ? Option.of(firstChar)
-            : Option.of(secondChar);
+        return (char firstChar, char secondChar) -> Option.of(universal(firstChar, secondChar, hardBlank));
+    }
+
+    /**
+     * Primitive form of {@link #universalSmush(char)}, always succeeds
+     *
+     * @return the smushed sub-character
+     */
+    public static char universal(char firstChar, char secondChar, char hardBlank){
+        return secondChar == hardBlank ? firstChar : secondChar;
     }
 
     /**
@@ -156,6 +246,58 @@ public class SmushRules {
         };
     }
 
+    //primitive equivalent of aggregateRules for the rules enabled in a horizontal layout, applied in rule order
+    static ICharSmushFunction horizontalRules(final Layout.HorizontalLayout layout, final char hardBlank){
+        if (layout.applyUniversalSmushing)
+            return (char firstChar, char secondChar) -> universal(firstChar, secondChar, hardBlank);
+
+        return (char firstChar, char secondChar) -> {
+            if (firstChar == hardBlank || secondChar == hardBlank)
+                return layout.applyHardBlankSmushing ? hardblank(firstChar, secondChar, hardBlank) : NO_SMUSH;
+
+            char smushed = NO_SMUSH;
+            if (layout.applyEqualCharSmushing)
+                smushed = equalCharacter(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyUnderscoreSmushing)
+                smushed = underscore(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyHeirarchySmushing)
+                smushed = hierarchical(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyOppositePairSmushing)
+                smushed = oppositePair(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyBigXSmushing)
+                smushed = bigX(firstChar, secondChar);
+            return smushed;
+        };
+    }
+
+    //primitive rules enabled in a vertical layout, firstChar is the sub-character above secondChar
+    static ICharSmushFunction verticalRules(final Layout.VerticalLayout layout, final char hardBlank){
+        if (layout.applyUniversalSmushing)
+            return (char firstChar, char secondChar) -> universal(firstChar, secondChar, hardBlank);
+
+        return (char firstChar, char secondChar) -> {
+            if (firstChar == hardBlank || secondChar == hardBlank)
+                return NO_SMUSH; //no vertical rule smushes hardblanks
+
+            char smushed = NO_SMUSH;
+            if (layout.applyEqualCharSmushing)
+                smushed = equalCharacter(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyUnderscoreSmushing)
+                smushed = underscore(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyHeirarchySmushing)
+                smushed = hierarchical(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyHorizontalLineSmushing)
+                smushed = horizontalLine(firstChar, secondChar);
+            if (smushed == NO_SMUSH && layout.applyVerticalLineSuperSmushing)
+                smushed = verticalLine(firstChar, secondChar);
+            return smushed;
+        };
+    }
+
+    private static Option<Character> toOption(char smushed){
+        return smushed == NO_SMUSH ? Option.<Character>empty() : Option.of(smushed);
+    }
+
     public interface ISmushFunction {
         Option<Character> trySmush(char firstChar, char secondChar);
     }
@@ -163,4 +305,11 @@ public class SmushRules {
     public interface IHardBlankSmushFunction {
         Option<Character> trySmush(char firstChar, char secondChar, char hardBlank);
     }
+
+    /**
+     * Allocation free smush function, returns {@link #NO_SMUSH} instead of an empty {@link Option}
+     */
+    public interface ICharSmushFunction {
+        char smush(char firstChar, char secondChar);
+    }
 }
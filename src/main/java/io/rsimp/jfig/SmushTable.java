@@ -0,0 +1,25 @@
+package io.rsimp.jfig;
+
+import io.rsimp.jfig.SmushRules.ICharSmushFunction;
+
+//precomputed smush results for every pair of ASCII sub-characters, other pairs fall back to the rules
+class SmushTable implements ICharSmushFunction {
+    private static final int TABLE_RANGE = 128;
+
+    private final ICharSmushFunction rules;
+    private final char[] table = new char[TABLE_RANGE * TABLE_RANGE];
+
+    SmushTable(ICharSmushFunction rules){
+        this.rules = rules;
+        for (char firstChar = 0; firstChar < TABLE_RANGE; firstChar++)
+            for (char secondChar = 0; secondChar < TABLE_RANGE; secondChar++)
+                this.table[firstChar * TABLE_RANGE + secondChar] = rules.smush(firstChar, secondChar);
+    }
+
+    @Override
+    public char smush(char firstChar, char secondChar){
+        if ((firstChar | secondChar) < TABLE_RANGE)
+            return this.table[firstChar * TABLE_RANGE + secondChar];
+        return this.rules.smush(firstChar, secondChar);
+    }
+}
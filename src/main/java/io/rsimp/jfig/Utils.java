@@ -27,7 +27,14 @@ class Utils {
         return str.substring(0, end);
     }
 
-    static String repeatString(String str, int numRepeat){
-        return new String(new char[numRepeat]).replace("\0", str);
+    static void replace(char[] chars, int start, int end, char oldChar, char newChar){
+        for (int i = start; i < end; i++)
+            if (chars[i] == oldChar)
+                chars[i] = newChar;
+    }
+
+    static void appendRepeated(StringBuilder builder, char repeatChar, int numRepeat){
+        for (int i = 0; i < numRepeat; i++)
+            builder.append(repeatChar);
     }
 }
@@ -0,0 +1,129 @@
+package io.rsimp.jfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//stacks the rows of a paragraph by a vertical layout, moving each row up into the one above by as many lines as fitting or smushing allows
+//immutable, one instance is shared by every render using the same layout
+class VerticalStacker {
+    private static final int OVERLAP_VALID = 0;
+    private static final int OVERLAP_END = 1; //lines can overlap, but the rows can't move any closer
+    private static final int OVERLAP_INVALID = 2;
+
+    private final LayoutMode mode;
+    private final boolean applyVerticalLineSuperSmushing;
+    private final SmushRules.ICharSmushFunction smushFunction;
+
+    VerticalStacker(Layout.VerticalLayout layout, char hardBlank){
+        this.mode = layout.mode;
+        this.applyVerticalLineSuperSmushing = layout.applyVerticalLineSuperSmushing && !layout.applyUniversalSmushing;
+        this.smushFunction = SmushRules.verticalRules(layout, hardBlank);
+    }
+
+    LayoutMode getMode(){ return this.mode; }
+
+    //stacks the first rowCount rows into lines without their prefix
+    List<StackedLine> stack(List<FIGure> rows, int rowCount, int prefixLength){
+        ArrayList<StackedLine> stackedLines = new ArrayList<>();
+        StackedLine[] rowLines = null;
+        for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
+            FIGure.FIGureLine[] figureLines = rows.get(rowIndex).lines;
+            if (rowLines == null)
+                rowLines = new StackedLine[figureLines.length];
+            for (int lineIndex = 0; lineIndex < figureLines.length; lineIndex++)
+                rowLines[lineIndex] = new StackedLine(figureLines[lineIndex], prefixLength, rowIndex);
+
+            int overlap = this.getOverlap(stackedLines, rowLines);
+            int firstOverlappedLine = stackedLines.size() - overlap;
+            for (int lineIndex = 0; lineIndex < overlap; lineIndex++)
+                this.smushLines(stackedLines.get(firstOverlappedLine + lineIndex), rowLines[lineIndex]);
+            for (int lineIndex = overlap; lineIndex < rowLines.length; lineIndex++)
+                stackedLines.add(rowLines[lineIndex]);
+        }
+        return stackedLines;
+    }
+
+    //number of lines at the bottom of stackedLines the next row can move up into
+    private int getOverlap(List<StackedLine> stackedLines, StackedLine[] rowLines){
+        int maxOverlap = Math.min(stackedLines.size(), rowLines.length);
+        if (this.mode == LayoutMode.FULL_SIZE)
+            return 0;
+
+        for (int overlap = 1; overlap <= maxOverlap; overlap++) {
+            int firstOverlappedLine = stackedLines.size() - overlap;
+            int result = OVERLAP_VALID;
+            for (int lineIndex = 0; lineIndex < overlap && result != OVERLAP_INVALID; lineIndex++)
+                result = Math.max(result, this.canOverlap(stackedLines.get(firstOverlappedLine + lineIndex), rowLines[lineIndex]));
+            if (result == OVERLAP_INVALID)
+                return overlap - 1;
+            if (result == OVERLAP_END)
+                return overlap;
+        }
+        return maxOverlap;
+    }
+
+    private int canOverlap(StackedLine upperLine, StackedLine lowerLine){
+        boolean isEnd = false;
+        //only columns where both lines have sub-characters can collide
+        int collisionEnd = Math.min(upperLine.end, lowerLine.end);
+        for (int charIndex = Math.max(upperLine.start, lowerLine.start); charIndex < collisionEnd; charIndex++) {
+            char upperChar = upperLine.chars.charAt(charIndex);
+            char lowerChar = lowerLine.chars.charAt(charIndex);
+            if (upperChar == ' ' || lowerChar == ' ')
+                continue;
+            if (this.mode == LayoutMode.FITTED)
+                return OVERLAP_INVALID;
+            if (this.applyVerticalLineSuperSmushing && SmushRules.verticalLine(upperChar, lowerChar) != SmushRules.NO_SMUSH)
+                continue;
+            if (this.smushFunction.smush(upperChar, lowerChar) == SmushRules.NO_SMUSH)
+                return OVERLAP_INVALID;
+            isEnd = true;
+        }
+        return isEnd ? OVERLAP_END : OVERLAP_VALID;
+    }
+
+    //smushes lowerLine into upperLine, blanks take the other line's sub-character
+    private void smushLines(StackedLine upperLine, StackedLine lowerLine){
+        StringBuilder upperChars = upperLine.chars;
+        if (upperChars.length() < lowerLine.chars.length())
+            Utils.appendRepeated(upperChars, ' ', lowerLine.chars.length() - upperChars.length());
+        for (int charIndex = lowerLine.start; charIndex < lowerLine.end; charIndex++) {
+            char lowerChar = lowerLine.chars.charAt(charIndex);
+            if (lowerChar == ' ')
+                continue;
+            char upperChar = upperChars.charAt(charIndex);
+            upperChars.setCharAt(charIndex, upperChar == ' ' ? lowerChar : this.smushFunction.smush(upperChar, lowerChar));
+        }
+        if (upperLine.start == upperLine.end) {
+            upperLine.start = lowerLine.start;
+            upperLine.end = lowerLine.end;
+        } else if (lowerLine.start < lowerLine.end) {
+            upperLine.start = Math.min(upperLine.start, lowerLine.start);
+            upperLine.end = Math.max(upperLine.end, lowerLine.end);
+        }
+    }
+
+    //a FIGure line without its prefix, start and end bound its non blank sub-characters
+    //rowIndex is the row the line came from, lines of a lower row smushed into it keep the upper row's index
+    static class StackedLine {
+        final StringBuilder chars;
+        final int rowIndex;
+        int start;
+        int end;
+
+        StackedLine(FIGure.FIGureLine figureLine, int prefixLength, int rowIndex){
+            this.rowIndex = rowIndex;
+            StringBuilder content = figureLine.content;
+            this.chars = new StringBuilder(content.length() - prefixLength + figureLine.rightSpaces);
+            this.chars.append(content, prefixLength, content.length());
+            Utils.appendRepeated(this.chars, ' ', figureLine.rightSpaces);
+
+            this.end = this.chars.length();
+            while (this.end > 0 && this.chars.charAt(this.end - 1) == ' ')
+                this.end--;
+            this.start = 0;
+            while (this.start < this.end && this.chars.charAt(this.start) == ' ')
+                this.start++;
+        }
+    }
+}
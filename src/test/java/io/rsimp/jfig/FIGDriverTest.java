@@ -2,7 +2,10 @@ package io.rsimp.jfig;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
 import static org.junit.Assert.*;
@@ -161,5 +164,81 @@ public class FIGDriverTest {
         String contents = new String(Files.readAllBytes(file.toPath()));
         assertEquals(contents, banner);
     }
-}
 
+    @Test
+    public void convertToAppendable() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        StringWriter banner = new StringWriter();
+        driver.convert(testMessage, "", banner);
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("smslant_parsed.txt").getPath());
+        String contents = new String(Files.readAllBytes(file.toPath()));
+        assertEquals(contents, banner.toString());
+    }
+
+    @Test
+    public void convertToOutputStream() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        driver.setKerningMode();
+        ByteArrayOutputStream banner = new ByteArrayOutputStream();
+        driver.convert(new StringBuilder(testMessage), "", banner, StandardCharsets.UTF_8);
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("smslant_kerning.txt").getPath());
+        byte[] contents = Files.readAllBytes(file.toPath());
+        assertArrayEquals(contents, banner.toByteArray());
+    }
+
+    @Test
+    public void convertToSmslantWrapped() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        driver.setWidth(40);
+        String banner = driver.convert(testMessage, "");
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("smslant_wrapped.txt").getPath());
+        String contents = new String(Files.readAllBytes(file.toPath()));
+        assertEquals(contents, banner);
+        for (String line : banner.split("\n"))
+            assertTrue(line.length() <= 40);
+    }
+
+    @Test
+    public void convertMultipleLines() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        driver.setLayout(143); //the font's horizontal smushing with rows stacked at full height
+        String banner = driver.convert("quick\r\nbrown\n\nfox", "");
+
+        String expected = driver.convert("quick", "") + "\n"
+            + driver.convert("brown", "") + "\n"
+            + driver.convert("", "") + "\n"
+            + driver.convert("fox", "");
+        assertEquals(expected, banner);
+        assertEquals("\n\n\n\n", driver.convert("", ""));
+    }
+
+    @Test
+    public void convertToSmslantVerticalSmushed() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        String banner = driver.convert("quick\nbrown\n\nfox", "");
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("smslant_vertical.txt").getPath());
+        String contents = new String(Files.readAllBytes(file.toPath()));
+        assertEquals(contents, banner);
+    }
+
+    @Test
+    public void convertVerticalFitted() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        driver.setLayout(143 + 8192); //the font's horizontal smushing with rows fitted vertically
+        String banner = driver.convert("quick\nbrown\n\nfox", "");
+
+        //brown can't move up past the descender of q, the blank row fits away entirely and fox moves up one line
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("smslant_vertical_fitted.txt").getPath());
+        String contents = new String(Files.readAllBytes(file.toPath()));
+        assertEquals(contents, banner);
+    }
+}
@@ -0,0 +1,130 @@
+package io.rsimp.jfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class FIGFontBundleTest {
+    static String testMessage = "The quick brown fox jumps over the lazy dog";
+
+    private ExecutorService executor;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.executor = Executors.newFixedThreadPool(4);
+        this.directory = Files.createTempDirectory("fonts").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.executor.shutdownNow();
+        File[] files = this.directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                Files.delete(file.toPath());
+        Files.delete(this.directory.toPath());
+    }
+
+    @Test
+    public void loadDirectoryReportsBadFonts() throws Exception {
+        byte[] smslant = Files.readAllBytes(new File(getClass().getResource("/smslant.flf").toURI()).toPath());
+        Files.write(new File(this.directory, "smslant.flf").toPath(), smslant);
+        Files.write(new File(this.directory, "copy.flf").toPath(), smslant);
+        Files.write(new File(this.directory, "badheader.flf").toPath(), "not a font\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.directory, "truncated.flf").toPath(), Arrays.copyOf(smslant, smslant.length / 2));
+        Files.write(new File(this.directory, "notes.txt").toPath(), "not a font either\n".getBytes(StandardCharsets.UTF_8));
+
+        FIGFontBundle bundle = FIGFontBundle.load(this.directory, this.executor);
+
+        assertEquals(Arrays.asList("copy", "smslant"), Arrays.asList(bundle.getFonts().keySet().toArray()));
+        assertEquals(4, bundle.getLoads().size());
+        String expected = new FIGRenderer(getClass().getResource("/smslant.flf")).render(testMessage);
+        assertEquals(expected, bundle.get("smslant").render(testMessage));
+        assertEquals(expected, bundle.get("copy").render(testMessage));
+        assertNull(bundle.get("badheader"));
+        assertNull(bundle.get("notes"));
+
+        List<FIGFontBundle.FontLoad> failures = bundle.getFailures();
+        assertEquals(2, failures.size());
+        assertEquals("badheader", failures.get(0).getName());
+        assertEquals("truncated", failures.get(1).getName());
+        for (FIGFontBundle.FontLoad failure : failures) {
+            assertFalse(failure.isLoaded());
+            assertNull(failure.getRenderer());
+            assertTrue(failure.getFailure() instanceof FIGFontFormatException);
+        }
+        for (FIGFontBundle.FontLoad load : bundle.getLoads())
+            assertTrue(load.getLoadTime(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    public void loadJarDirectory() throws Exception {
+        File jar = new File(this.directory, "fonts.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (String font : new String[] { "smslant.flf", "smslant_old_layout.flf" }) {
+                out.putNextEntry(new ZipEntry("fonts/" + font));
+                out.write(Files.readAllBytes(new File(getClass().getResource("/" + font).toURI()).toPath()));
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("fonts/nested/ignored.flf"));
+            out.write("not a font\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        FIGFontBundle bundle = FIGFontBundle.load(new URL("jar:" + jar.toURI() + "!/fonts/"), this.executor);
+
+        assertEquals(Arrays.asList("smslant", "smslant_old_layout"), Arrays.asList(bundle.getFonts().keySet().toArray()));
+        assertTrue(bundle.getFailures().isEmpty());
+        assertEquals(
+            new FIGRenderer(getClass().getResource("/smslant_old_layout.flf")).render(testMessage),
+            bundle.get("smslant_old_layout").render(testMessage)
+        );
+    }
+
+    @Test
+    public void interruptedLoadCancelsFontsBeforeJarCloses() throws Exception {
+        File jar = new File(this.directory, "fonts.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("smslant.flf"));
+            out.write(Files.readAllBytes(new File(getClass().getResource("/smslant.flf").toURI()).toPath()));
+            out.closeEntry();
+        }
+
+        //loads are queued but never run, so the caller waits until it's interrupted
+        List<Runnable> queued = new ArrayList<>();
+        Thread.currentThread().interrupt();
+        try {
+            FIGFontBundle.load(new URL("jar:" + jar.toURI() + "!/"), queued::add);
+            fail("load returned without loading its fonts");
+        } catch (InterruptedException e) {
+            assertEquals(1, queued.size());
+            assertTrue(((Future<?>)queued.get(0)).isCancelled());
+            queued.get(0).run(); //a late start doesn't read the closed jar
+        }
+    }
+
+    @Test(expected = FIGFontFormatException.class)
+    public void invalidHeaderIsFormatException() throws Exception {
+        new FIGRenderer(new ByteArrayInputStream("flf2a$ x\n".getBytes(StandardCharsets.UTF_8)));
+    }
+}
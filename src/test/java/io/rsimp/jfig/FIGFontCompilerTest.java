@@ -0,0 +1,86 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FIGFontCompilerTest {
+    static String testMessage = "The quick brown fox jumps over the lazy dog\nÄÖÜ äöü ß";
+
+    @Test
+    public void compiledFileRendersLikeTextFont() throws Exception {
+        File font = new File(getClass().getResource("/smslant_custom_codetags.flf").toURI());
+        File compiledFont = File.createTempFile("smslant", ".flc");
+        try {
+            FIGFontCompiler.compile(font, compiledFont);
+            FIGRenderer textRenderer = new FIGRenderer(font);
+            FIGRenderer compiledRenderer = new FIGRenderer(compiledFont);
+
+            assertEquals(textRenderer.getDefaultOptions(), compiledRenderer.getDefaultOptions());
+            FIGOptions options = textRenderer.getDefaultOptions();
+            for (FIGOptions layout : new FIGOptions[] {
+                options, options.withFullWidthMode(), options.withKerningMode(), options.withUniversalSmushing()
+            })
+                assertEquals(textRenderer.render(testMessage, layout), compiledRenderer.render(testMessage, layout));
+        } finally {
+            Files.delete(compiledFont.toPath());
+        }
+    }
+
+    @Test
+    public void compiledStreamIsDetected() throws Exception {
+        ByteArrayOutputStream compiledFont = new ByteArrayOutputStream();
+        FIGFontCompiler.compile(getClass().getResourceAsStream("/smslant.flf"), compiledFont);
+
+        FIGRenderer textRenderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGRenderer compiledRenderer = new FIGRenderer(new ByteArrayInputStream(compiledFont.toByteArray()));
+        assertEquals(textRenderer.render(testMessage), compiledRenderer.render(testMessage));
+    }
+
+    @Test
+    public void truncatedOrCorruptCompiledFontIsFormatException() throws Exception {
+        ByteArrayOutputStream compiledStream = new ByteArrayOutputStream();
+        FIGFontCompiler.compile(getClass().getResourceAsStream("/smslant.flf"), compiledStream);
+        byte[] compiledFont = compiledStream.toByteArray();
+
+        for (int length = 4; length < compiledFont.length; length += length < 64 ? 1 : 61)
+            assertFormatException(Arrays.copyOf(compiledFont, length));
+
+        //glyph count right after the header line, its char count and the magic and version
+        int glyphCountOffset = 12 + 2 * ByteBuffer.wrap(compiledFont).getInt(8);
+        for (int glyphCount : new int[] { -1, Integer.MAX_VALUE, 1 << 29 }) {
+            byte[] corruptFont = compiledFont.clone();
+            ByteBuffer.wrap(corruptFont).putInt(glyphCountOffset, glyphCount);
+            assertFormatException(corruptFont);
+        }
+
+        File truncatedFile = File.createTempFile("smslant", ".flc");
+        try {
+            Files.write(truncatedFile.toPath(), Arrays.copyOf(compiledFont, compiledFont.length / 2));
+            new FIGRenderer(truncatedFile);
+            fail("loaded a truncated compiled font");
+        } catch (FIGFontFormatException e) {
+            //expected
+        } finally {
+            Files.delete(truncatedFile.toPath());
+        }
+    }
+
+    private static void assertFormatException(byte[] compiledFont){
+        try {
+            new FIGRenderer(new ByteArrayInputStream(compiledFont));
+            fail("loaded a corrupt compiled font of " + compiledFont.length + " bytes");
+        } catch (FIGFontFormatException e) {
+            //expected
+        } catch (Exception e) {
+            throw new AssertionError("corrupt compiled font of " + compiledFont.length + " bytes failed with " + e, e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FIGFontRegistryTest {
+    @Test
+    public void cachesFontsByCanonicalLocation() throws Exception {
+        FIGFontRegistry registry = new FIGFontRegistry(4);
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+
+        FIGRenderer first = registry.get(font);
+        FIGRenderer second = registry.get(new File(font.getParentFile(), "./smslant.flf"));
+        FIGRenderer byURL = registry.get(getClass().getResource("/smslant.flf"));
+
+        assertSame(first, second);
+        assertSame(first, byURL);
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.getStats().getHitCount());
+        assertEquals(1, registry.getStats().getMissCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFont() throws Exception {
+        FIGFontRegistry registry = new FIGFontRegistry(2);
+        final FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGFontRegistry.FontLoader loader = () -> renderer;
+
+        registry.get("a", loader);
+        registry.get("b", loader);
+        registry.get("a", loader);
+        registry.get("c", loader); //evicts b
+        registry.get("a", loader);
+        registry.get("b", loader);
+
+        FIGFontRegistry.Stats stats = registry.getStats();
+        assertEquals(2, registry.size());
+        assertEquals(2, stats.getHitCount());
+        assertEquals(4, stats.getMissCount());
+        assertEquals(2, stats.getEvictionCount());
+    }
+
+    @Test
+    public void concurrentRequestsLoadOnce() throws Exception {
+        final FIGFontRegistry registry = new FIGFontRegistry(4);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final FIGFontRegistry.FontLoader loader = () -> {
+            loads.incrementAndGet();
+            try {
+                loading.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new FIGRenderer(getClass().getResource("/smslant.flf"));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<FIGRenderer>> results = new ArrayList<>();
+            for (int task = 0; task < 8; task++)
+                results.add(executor.submit(() -> registry.get("smslant", loader)));
+            Thread.sleep(100);
+            loading.countDown();
+            for (Future<FIGRenderer> result : results)
+                assertSame(results.get(0).get(), result.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(7, registry.getStats().getHitCount());
+    }
+
+    @Test
+    public void failedLoadsAreRetried() throws Exception {
+        FIGFontRegistry registry = new FIGFontRegistry(4);
+        try {
+            registry.get("missing", () -> { throw new IOException("missing font"); });
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("missing font", e.getMessage());
+        }
+        assertEquals(0, registry.size());
+        assertEquals(1, registry.getStats().getLoadFailureCount());
+        assertNotNull(registry.get("missing", () -> new FIGRenderer(getClass().getResource("/smslant.flf"))));
+    }
+}
@@ -0,0 +1,56 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class FIGRasterizerTest {
+    @Test
+    public void cellsAreDrawnWhereSubCharactersAre() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions options = renderer.getDefaultOptions();
+        FIGRasterizer rasterizer = new FIGRasterizer(8, 14, ColorGradient.solid(0xFF0000), 0xFFFFFFFF);
+
+        String[] lines = renderer.render("Hi", options).split("\n", -1);
+        BufferedImage image = rasterizer.rasterize(renderer, "Hi", options);
+        FIGSize size = renderer.measure("Hi", options);
+        assertEquals(size.getWidth() * 8, image.getWidth());
+        assertEquals(size.getHeight() * 14, image.getHeight());
+
+        for (int line = 0; line < lines.length; line++) {
+            for (int column = 0; column < size.getWidth(); column++) {
+                boolean isBlank = column >= lines[line].length() || lines[line].charAt(column) == ' ';
+                boolean isDrawn = false;
+                for (int y = line * 14; y < (line + 1) * 14; y++)
+                    for (int x = column * 8; x < (column + 1) * 8; x++)
+                        isDrawn |= image.getRGB(x, y) != 0xFFFFFFFF;
+                assertEquals("line " + line + " column " + column, !isBlank, isDrawn);
+            }
+        }
+    }
+
+    @Test
+    public void writePngWithTransparentBackground() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGRasterizer rasterizer = new FIGRasterizer(6, 10, ColorGradient.byCharacter(0xFF0000, 0x0000FF), 0);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        rasterizer.writePng(renderer, "fox\ndog", renderer.getDefaultOptions(), png);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        FIGSize size = renderer.measure("fox\ndog");
+        assertEquals(size.getWidth() * 6, image.getWidth());
+        assertEquals(size.getHeight() * 10, image.getHeight());
+        assertEquals(0, image.getRGB(0, image.getHeight() - 1) >>> 24); //blank cells stay transparent
+
+        //the same sub-characters drawn again come from cached tiles and look the same
+        BufferedImage again = rasterizer.rasterize(renderer, "fox\ndog", renderer.getDefaultOptions());
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                assertEquals(image.getRGB(x, y), again.getRGB(x, y));
+    }
+}
@@ -0,0 +1,131 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class FIGRenderCacheTest {
+    @Test
+    public void cachesByOptionsAndText() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGRenderCache cache = new FIGRenderCache(16, 100000);
+        FIGOptions defaults = renderer.getDefaultOptions();
+
+        String banner = cache.render(renderer, "prod", defaults);
+        assertSame(banner, cache.render(renderer, "prod", defaults));
+        assertEquals(renderer.render("prod", defaults.withKerningMode()), cache.render(renderer, "prod", defaults.withKerningMode()));
+        assertEquals(renderer.render("prod", defaults.withPrefix("# ")), cache.render(renderer, "prod", defaults.withPrefix("# ")));
+
+        FIGRenderCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(3, stats.getEntryCount());
+        assertEquals(0.25, stats.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void evictsByCountAndWeight() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        String banner = renderer.render("dev");
+        long entryWeight = "dev".length() + banner.length();
+
+        FIGRenderCache countBound = new FIGRenderCache(2, 100000);
+        countBound.render(renderer, "a", renderer.getDefaultOptions());
+        countBound.render(renderer, "b", renderer.getDefaultOptions());
+        countBound.render(renderer, "c", renderer.getDefaultOptions());
+        assertEquals(2, countBound.getStats().getEntryCount());
+        assertEquals(1, countBound.getStats().getEvictionCount());
+
+        FIGRenderCache weightBound = new FIGRenderCache(16, entryWeight);
+        weightBound.render(renderer, "dev", renderer.getDefaultOptions());
+        assertEquals(entryWeight, weightBound.getStats().getWeight());
+        weightBound.render(renderer, "qa", renderer.getDefaultOptions());
+        assertEquals(1, weightBound.getStats().getEntryCount());
+        assertEquals(1, weightBound.getStats().getEvictionCount());
+
+        weightBound.render(renderer, "production", renderer.getDefaultOptions()); //heavier than the whole cache
+        assertEquals(1, weightBound.getStats().getEntryCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyHit() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions defaults = renderer.getDefaultOptions();
+        FIGRenderCache cache = new FIGRenderCache(2, 100000);
+        String a = cache.render(renderer, "a", defaults);
+        cache.render(renderer, "b", defaults);
+        assertSame(a, cache.render(renderer, "a", defaults)); //buffered hit, applied before the next insert evicts
+
+        cache.render(renderer, "c", defaults);
+        assertSame(a, cache.render(renderer, "a", defaults));
+        assertEquals(2, cache.getStats().getHitCount());
+        assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    public void concurrentHitsKeepCountsAndBounds() throws Exception {
+        final FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        final FIGOptions defaults = renderer.getDefaultOptions();
+        final FIGRenderCache cache = new FIGRenderCache(2, 100000);
+        final String a = cache.render(renderer, "a", defaults);
+        cache.render(renderer, "b", defaults);
+
+        //far more hits than the hit buffer holds, most are dropped from the LRU order while no miss drains it
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> threads = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++)
+                threads.add(executor.submit(() -> {
+                    for (int hit = 0; hit < 20000; hit++)
+                        assertSame(a, cache.render(renderer, "a", defaults));
+                }));
+            for (Future<?> thread : threads)
+                thread.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        cache.render(renderer, "c", defaults);
+        assertSame(a, cache.render(renderer, "a", defaults));
+        FIGRenderCache.Stats stats = cache.getStats();
+        assertEquals(8 * 20000 + 1, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(2, stats.getEntryCount());
+    }
+
+    @Test
+    public void dropsEntriesOfCollectedRenderers() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGRenderCache cache = new FIGRenderCache(16, 100000);
+        cache.render(new FIGRenderer(getClass().getResource("/smslant.flf")), "temp", renderer.getDefaultOptions());
+        assertEquals(1, cache.getStats().getEntryCount());
+
+        //the temporary renderer is unreachable, its entry is dropped on a miss once it's collected
+        int kept = 0;
+        while (kept < 50 && cache.getStats().getEntryCount() != kept) {
+            System.gc();
+            Thread.sleep(20);
+            cache.render(renderer, "kept" + kept++, renderer.getDefaultOptions());
+        }
+        assertEquals(kept, cache.getStats().getEntryCount());
+    }
+
+    @Test
+    public void driverConvertUsesCache() throws Exception {
+        FIGDriver driver = new FIGDriver(getClass().getResource("/smslant.flf"));
+        FIGRenderCache cache = new FIGRenderCache(16, 100000);
+        driver.setRenderCache(cache);
+
+        String banner = driver.convert("staging", "");
+        assertSame(banner, driver.convert("staging", ""));
+        driver.setKerningMode();
+        assertEquals(driver.getRenderer().render("staging", driver.getOptions()), driver.convert("staging", ""));
+        assertEquals(1, cache.getStats().getHitCount());
+    }
+}
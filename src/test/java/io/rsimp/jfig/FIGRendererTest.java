@@ -0,0 +1,300 @@
+package io.rsimp.jfig;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class FIGRendererTest {
+    static String testMessage = "The quick brown fox jumps over the lazy dog";
+
+    private FIGRenderer renderer;
+    private String fontText; //smslant.flf, for tests appending glyphs to it
+
+    @Before
+    public void loadFont() throws Exception {
+        this.renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        this.fontText = new String(Files.readAllBytes(new File(getClass().getResource("/smslant.flf").toURI()).toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void renderWithPerCallOptions() throws Exception {
+        FIGOptions defaults = renderer.getDefaultOptions();
+
+        assertEquals(readResource("smslant_parsed.txt"), renderer.render(testMessage));
+        assertEquals(readResource("smslant_kerning.txt"), renderer.render(testMessage, defaults.withKerningMode()));
+        assertEquals(readResource("smslant_full_width.txt"), renderer.render(testMessage, defaults.withFullWidthMode()));
+        assertEquals(readResource("smslant_overlapping.txt"), renderer.render(testMessage, defaults.withUniversalSmushing()));
+        assertEquals(readResource("smslant_reverse.txt"), renderer.render(testMessage, defaults.withPrintRightToLeft(true)));
+        assertEquals(readResource("smslant_parsed.txt"), renderer.render(testMessage, defaults));
+    }
+
+    @Test
+    public void optionsAreImmutableValues() throws Exception {
+        FIGOptions defaults = renderer.getDefaultOptions();
+        FIGOptions kerning = defaults.withKerningMode();
+
+        assertNotSame(defaults, kerning);
+        assertEquals(22415, defaults.getLayoutMask());
+        assertEquals(kerning, defaults.withKerningMode());
+        assertEquals(kerning.hashCode(), defaults.withKerningMode().hashCode());
+        assertFalse(kerning.equals(defaults));
+        assertEquals("> ", defaults.withPrefix("> ").getPrefix());
+        assertEquals("", defaults.getPrefix());
+    }
+
+    @Test
+    public void layoutsRenderTheSameOnceDropped() throws Exception {
+        FIGOptions defaults = renderer.getDefaultOptions();
+        String[] smushed = new String[64];
+        for (int rules = 0; rules < 64; rules++)
+            smushed[rules] = renderer.render(testMessage, defaults.withLayout(128 | rules));
+
+        //only a few layouts are kept, the first ones are built again
+        for (int rules = 0; rules < 64; rules++)
+            assertEquals(smushed[rules], renderer.render(testMessage, defaults.withLayout(128 | rules)));
+        //rule bits of modes that don't smush are ignored
+        assertEquals(renderer.render(testMessage, defaults.withLayout(64)), renderer.render(testMessage, defaults.withLayout(64 | 63 | 7936)));
+        assertEquals(renderer.render(testMessage, defaults.withLayout(0)), renderer.render(testMessage, defaults.withLayout(63)));
+        assertEquals(renderer.render(testMessage), renderer.render(testMessage, defaults));
+    }
+
+    @Test
+    public void renderConcurrentlyFromOneFont() throws Exception {
+        final FIGOptions[] options = {
+            renderer.getDefaultOptions(),
+            renderer.getDefaultOptions().withKerningMode(),
+            renderer.getDefaultOptions().withUniversalSmushing()
+        };
+        String[] expected = {
+            readResource("smslant_parsed.txt"),
+            readResource("smslant_kerning.txt"),
+            readResource("smslant_overlapping.txt")
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int task = 0; task < 60; task++) {
+                final FIGOptions taskOptions = options[task % options.length];
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return renderer.render(testMessage, taskOptions);
+                    }
+                }));
+            }
+            for (int task = 0; task < results.size(); task++)
+                assertEquals(expected[task % expected.length], results.get(task).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void renderAllKeepsInputOrder() throws Exception {
+        FIGOptions options = renderer.getDefaultOptions().withKerningMode();
+        List<String> hosts = new ArrayList<>();
+        for (int host = 0; host < 500; host++)
+            hosts.add("host-" + host);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> banners = renderer.renderAll(hosts, options, pool);
+            assertEquals(hosts.size(), banners.size());
+            for (int host = 0; host < hosts.size(); host++)
+                assertEquals(renderer.render(hosts.get(host), options), banners.get(host));
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(renderer.renderAll(new ArrayList<String>(), options, pool).isEmpty());
+    }
+
+    @Test
+    public void renderAllCancelsChunksWhenInterrupted() throws Exception {
+        List<String> hosts = new ArrayList<>();
+        for (int host = 0; host < 100; host++)
+            hosts.add("host-" + host);
+
+        //chunks are queued but never run, so the caller waits until it's interrupted
+        final List<Runnable> queued = new ArrayList<>();
+        Thread.currentThread().interrupt();
+        try {
+            renderer.renderAll(hosts, renderer.getDefaultOptions(), queued::add);
+            fail("renderAll returned without its chunks running");
+        } catch (InterruptedException e) {
+            assertFalse(queued.isEmpty());
+            for (Runnable chunk : queued)
+                assertTrue(((Future<?>)chunk).isCancelled());
+        }
+    }
+
+    @Test
+    public void renderSupplementaryAndMissingCharacters() throws Exception {
+        FIGRenderer extendedRenderer = withGlyphs(
+            "0x1F600  GRINNING FACE\n" + glyph("(^_^)")
+            + "-2  RESERVED\n" + glyph("-two-")
+            + "0  MISSING CHARACTER\n" + glyph("[???]")
+        );
+        FIGOptions fullWidth = extendedRenderer.getDefaultOptions().withFullWidthMode();
+
+        assertEquals(extendedRenderer.render("a", fullWidth), extendedRenderer.render("a", fullWidth.withFallbackCodePoint('x')));
+        assertTrue(extendedRenderer.render("\uD83D\uDE00", fullWidth).startsWith("(^_^)"));
+        assertTrue(extendedRenderer.render("\u4E00", fullWidth).startsWith("[???]"));
+        assertEquals(extendedRenderer.render("x", fullWidth), extendedRenderer.render("\u4E00", fullWidth.withFallbackCodePoint('x')));
+        assertEquals(extendedRenderer.render("ab", fullWidth), extendedRenderer.render("a\u4E00b", fullWidth.withFallbackCodePoint(-1)));
+        assertEquals(extendedRenderer.render("", fullWidth), extendedRenderer.render("\uDE00", fullWidth.withFallbackCodePoint(-1))); //lone surrogate
+    }
+
+    @Test
+    public void measureMatchesRenderedOutput() throws Exception {
+        FIGOptions defaults = renderer.getDefaultOptions();
+        String[] inputs = { "", testMessage, "quick\nbrown\r\nfox", "a\n\nb" };
+        for (String input : inputs) {
+            for (FIGOptions options : new FIGOptions[] {
+                defaults, defaults.withFullWidthMode(), defaults.withLayout(143), defaults.withPrefix("> ").withWidth(40),
+                defaults.withPrintRightToLeft(true).withWidth(25),
+                defaults.withJustification(FIGOptions.Justification.CENTER).withWidth(60).withBorder('*'),
+                defaults.withJustification(FIGOptions.Justification.RIGHT).withTrimTrailingSpaces(true).withPrefix("# ")
+            }) {
+                String output = renderer.render(input, options);
+                int width = 0;
+                String[] lines = output.split("\n", -1);
+                for (String line : lines)
+                    width = Math.max(width, line.length());
+                assertEquals(input, new FIGSize(width, lines.length), renderer.measure(input, options));
+            }
+        }
+        assertEquals(5, renderer.measure("").getHeight());
+    }
+
+    @Test
+    public void justifyTrimAndFrameLines() throws Exception {
+        FIGOptions rows = renderer.getDefaultOptions().withLayout(143); //rows aren't stacked into each other
+        String input = "quick\nfox";
+        String[] plainLines = renderer.render(input, rows).split("\n", -1);
+        int quickWidth = plainLines[0].length();
+        int foxWidth = plainLines[plainLines.length - 1].length();
+
+        String[] rightLines = renderer.render(input, rows.withJustification(FIGOptions.Justification.RIGHT).withWidth(50)).split("\n", -1);
+        String[] centerLines = renderer.render(input, rows.withJustification(FIGOptions.Justification.CENTER)).split("\n", -1);
+        String[] autoLines = renderer.render(input, rows.withJustification(FIGOptions.Justification.AUTO)).split("\n", -1);
+        String[] trimmedLines = renderer.render(input, rows.withTrimTrailingSpaces(true)).split("\n", -1);
+        String[] framedLines = renderer.render(input, rows.withBorder('#').withWidth(50)).split("\n", -1);
+        assertEquals(plainLines.length, rightLines.length);
+        assertEquals(plainLines.length + 2, framedLines.length);
+        assertEquals(repeat('#', 50), framedLines[0]);
+        assertEquals(repeat('#', 50), framedLines[framedLines.length - 1]);
+        for (int lineIndex = 0; lineIndex < plainLines.length; lineIndex++) {
+            String plainLine = plainLines[lineIndex];
+            boolean isQuickLine = lineIndex < plainLines.length / 2;
+            assertEquals(repeat(' ', 50 - plainLine.length()) + plainLine, rightLines[lineIndex]);
+            assertEquals(repeat(' ', isQuickLine ? 0 : (quickWidth - foxWidth) / 2) + plainLine, centerLines[lineIndex]);
+            assertEquals(plainLine, autoLines[lineIndex]);
+            assertEquals(plainLine.replaceAll(" +$", ""), trimmedLines[lineIndex]);
+            assertEquals("# " + plainLine + repeat(' ', 46 - plainLine.length()) + " #", framedLines[lineIndex + 1]);
+        }
+
+        //framed rows wrap inside the frame
+        for (String framedLine : renderer.render(testMessage, rows.withBorder('#').withWidth(50)).split("\n"))
+            assertEquals(50, framedLine.length());
+    }
+
+    @Test
+    public void renderRightToLeftByCodePoint() throws Exception {
+        FIGRenderer extendedRenderer = withGlyphs("0x1F600  GRINNING FACE\n" + glyph("(^_^)"));
+        FIGOptions defaults = extendedRenderer.getDefaultOptions();
+        FIGOptions rightToLeft = defaults.withPrintRightToLeft(true);
+
+        assertEquals(extendedRenderer.render("b\uD83D\uDE00a", defaults), extendedRenderer.render("a\uD83D\uDE00b", rightToLeft));
+        assertEquals(extendedRenderer.render("cba\nfed", defaults), extendedRenderer.render("abc\r\ndef", rightToLeft));
+        assertEquals(extendedRenderer.render("god yzal", defaults.withWidth(40)), extendedRenderer.render("lazy dog", rightToLeft.withWidth(40)));
+        //wrapped rows are broken in reading order, only the characters of each row are reversed
+        assertEquals(extendedRenderer.render("yzal\ngod", defaults.withWidth(25)), extendedRenderer.render("lazy dog", rightToLeft.withWidth(25)));
+        assertEquals(extendedRenderer.render("eno\nowt\neerht", defaults.withWidth(30)), extendedRenderer.render("one two three", rightToLeft.withWidth(30)));
+        assertEquals(extendedRenderer.render("ab\ncd\nfe", defaults.withWidth(12)), extendedRenderer.render("badcef", rightToLeft.withWidth(12)));
+        assertEquals(extendedRenderer.render("", defaults), extendedRenderer.render("", rightToLeft));
+    }
+
+    @Test
+    public void lazyFontRendersLikeEagerFont() throws Exception {
+        File font = new File(getClass().getResource("/smslant_custom_codetags.flf").toURI());
+        FIGRenderer eager = new FIGRenderer(font);
+        final FIGRenderer lazy = FIGRenderer.loadLazily(font);
+        final String message = testMessage + " ¡¢£¤ ÄÖÜäöüß";
+
+        //threads race to parse the same glyphs on first use
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> renders = new ArrayList<>();
+            for (int task = 0; task < 8; task++)
+                renders.add(executor.submit(() -> lazy.render(message)));
+            for (Future<String> render : renders)
+                assertEquals(eager.render(message), render.get());
+        } finally {
+            executor.shutdown();
+        }
+        FIGOptions universal = eager.getDefaultOptions().withUniversalSmushing();
+        assertEquals(eager.render(message, universal), lazy.render(message, universal));
+    }
+
+    @Test
+    public void lazyFontHandlesCarriageReturns() throws Exception {
+        byte[] crlfFont = this.fontText.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8);
+        FIGRenderer lazy = FIGRenderer.loadLazily(new ByteArrayInputStream(crlfFont));
+        assertEquals(readResource("smslant_parsed.txt"), lazy.render(testMessage));
+    }
+
+    @Test
+    public void renderZippedAndTOIletFonts() throws Exception {
+        byte[] toiletFont = this.fontText.replaceFirst("^flf2a", "tlf2a").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream zippedFont = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(zippedFont)) {
+            zipOut.putNextEntry(new ZipEntry("smslant.tlf"));
+            zipOut.write(toiletFont);
+        }
+
+        String expected = readResource("smslant_parsed.txt");
+        assertEquals(expected, new FIGRenderer(new ByteArrayInputStream(toiletFont)).render(testMessage));
+        assertEquals(expected, new FIGRenderer(new ByteArrayInputStream(zippedFont.toByteArray())).render(testMessage));
+        assertEquals(expected, FIGRenderer.loadLazily(new ByteArrayInputStream(zippedFont.toByteArray())).render(testMessage));
+    }
+
+    private String readResource(String name) throws Exception {
+        File file = new File(getClass().getClassLoader().getResource(name).getPath());
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    //smslant with extra glyphs appended to its code tagged FIGcharacters
+    private FIGRenderer withGlyphs(String codeTaggedGlyphs) throws Exception {
+        return new FIGRenderer(new ByteArrayInputStream((this.fontText + codeTaggedGlyphs).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String repeat(char repeated, int count){
+        StringBuilder repeatedChars = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            repeatedChars.append(repeated);
+        return repeatedChars.toString();
+    }
+
+    //FIGcharacter of height 5 with text on its first line
+    private static String glyph(String text){
+        String blank = "     ";
+        return text + "@\n" + blank + "@\n" + blank + "@\n" + blank + "@\n" + blank + "@@\n";
+    }
+}
@@ -0,0 +1,239 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FIGletTest {
+    static String testMessage = "The quick brown fox jumps over the lazy dog";
+
+    @Test
+    public void rendersEveryInputLineWithFigletFlags() throws Exception {
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+        FIGRenderer renderer = new FIGRenderer(font);
+        FIGOptions options = renderer.getDefaultOptions().withKerningMode().withPrintRightToLeft(true)
+            .withWidth(60).withJustification(FIGOptions.Justification.CENTER);
+
+        StringWriter out = new StringWriter();
+        FIGlet.run(new String[] { "-d", font.getParent(), "-f", "smslant", "-k", "-R", "-w", "60", "-c" },
+            ".", new FIGFontRegistry(4), new BufferedReader(new StringReader("Hello\nworld\n")), out);
+        assertEquals(renderer.render("Hello", options) + "\n" + renderer.render("world", options) + "\n", out.toString());
+
+        out = new StringWriter();
+        FIGlet.run(new String[] { "-f", font.getPath(), "-W", "--", "-Hello", "world" },
+            ".", new FIGFontRegistry(4), new BufferedReader(new StringReader("ignored")), out);
+        FIGOptions defaults = renderer.getDefaultOptions().withWidth(80); //figlet's width without -w
+        assertEquals(renderer.render("-Hello world", defaults.withFullWidthMode()) + "\n", out.toString());
+
+        out = new StringWriter();
+        FIGlet.run(new String[] { "-f", "smslant.flf", "Hi" }, font.getParent(), new FIGFontRegistry(4), new BufferedReader(new StringReader("")), out);
+        assertEquals(renderer.render("Hi", defaults) + "\n", out.toString());
+    }
+
+    @Test
+    public void layoutFlagsOverrideTheFontLayout() throws Exception {
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+        FIGRenderer renderer = new FIGRenderer(font);
+        FIGOptions defaults = renderer.getDefaultOptions().withWidth(80);
+
+        //-S smushes even when the font only kerns, a kerning font has no smushing rules so it's universal
+        File kerningDirectory = Files.createTempDirectory("fonts").toFile();
+        File kerningFont = new File(kerningDirectory, "kerning.flf");
+        try {
+            String fontText = new String(Files.readAllBytes(font.toPath()), StandardCharsets.UTF_8);
+            Files.write(kerningFont.toPath(), fontText.replaceFirst("flf2a\\$ 5 4 14 15 10 0 22415", "flf2a\\$ 5 4 14 0 10").getBytes(StandardCharsets.UTF_8));
+            FIGRenderer kerningRenderer = new FIGRenderer(kerningFont);
+            String smushed = figlet(kerningDirectory.getPath(), "-f", "kerning", "-S", testMessage);
+            FIGOptions kerningDefaults = kerningRenderer.getDefaultOptions().withWidth(80);
+            assertFalse(kerningRenderer.render(testMessage, kerningDefaults).equals(smushed));
+            assertEquals(kerningRenderer.render(testMessage, kerningDefaults.withUniversalSmushing()), smushed);
+        } finally {
+            Files.delete(kerningFont.toPath());
+            Files.delete(kerningDirectory.toPath());
+        }
+        assertEquals(renderer.render(testMessage, defaults), figlet(font.getParent(), "-f", "smslant", "-W", "-S", testMessage));
+
+        //-m takes an old layout, 0 kerns and -1 is full width
+        assertEquals(renderer.render(testMessage, defaults.withKerningMode()), figlet(font.getParent(), "-f", "smslant", "-m", "0", testMessage));
+        assertEquals(renderer.render(testMessage, defaults.withFullWidthMode()), figlet(font.getParent(), "-f", "smslant", "-m", "-1", testMessage));
+
+        //like figlet only the smushing rule bits of -m are kept, higher bits don't select other layouts
+        assertEquals(figlet(font.getParent(), "-f", "smslant", "-m", "1", testMessage), figlet(font.getParent(), "-f", "smslant", "-m", "65", testMessage));
+        assertEquals(figlet(font.getParent(), "-f", "smslant", "-m", "63", testMessage), figlet(font.getParent(), "-f", "smslant", "-m", "32767", testMessage));
+        assertEquals(renderer.render(testMessage, defaults.withUniversalSmushing()), figlet(font.getParent(), "-f", "smslant", "-m", "64", testMessage));
+
+        //-s goes back to the font's layout, the last layout flag wins
+        assertEquals(renderer.render(testMessage, defaults), figlet(font.getParent(), "-f", "smslant", "-k", "-s", testMessage));
+        assertEquals(renderer.render(testMessage, defaults.withKerningMode()), figlet(font.getParent(), "-f", "smslant", "-s", "-k", testMessage));
+    }
+
+    @Test
+    public void directionAndJustificationFlags() throws Exception {
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+        FIGRenderer renderer = new FIGRenderer(font);
+        FIGOptions defaults = renderer.getDefaultOptions().withWidth(80);
+        String fontDirectory = font.getParent();
+
+        //-L prints left to right, -X goes back to the font's direction
+        assertFalse(renderer.render(testMessage, defaults).equals(figlet(fontDirectory, "-f", "smslant", "-R", testMessage)));
+        assertEquals(renderer.render(testMessage, defaults.withPrintRightToLeft(false)), figlet(fontDirectory, "-f", "smslant", "-R", "-L", testMessage));
+        assertEquals(renderer.render(testMessage, defaults), figlet(fontDirectory, "-f", "smslant", "-R", "-X", testMessage));
+
+        //without -w rows are aligned within figlet's 80 columns
+        assertEquals(renderer.render(testMessage, defaults.withJustification(FIGOptions.Justification.CENTER)),
+            figlet(fontDirectory, "-f", "smslant", "-c", testMessage));
+        String rightAligned = figlet(fontDirectory, "-f", "smslant", "-r", "Hi");
+        assertEquals(renderer.render("Hi", defaults.withJustification(FIGOptions.Justification.RIGHT)), rightAligned);
+        assertEquals(80, rightAligned.split("\n")[1].length());
+
+        FIGOptions wrapped = defaults.withWidth(60);
+        assertEquals(renderer.render(testMessage, wrapped.withJustification(FIGOptions.Justification.LEFT)),
+            figlet(fontDirectory, "-f", "smslant", "-w", "60", "-r", "-l", testMessage));
+        assertEquals(renderer.render(testMessage, wrapped.withJustification(FIGOptions.Justification.RIGHT)),
+            figlet(fontDirectory, "-f", "smslant", "-w", "60", "-r", testMessage));
+        assertEquals(renderer.render(testMessage, wrapped.withJustification(FIGOptions.Justification.AUTO)),
+            figlet(fontDirectory, "-f", "smslant", "-w", "60", "-c", "-x", testMessage));
+        assertFalse(figlet(fontDirectory, "-f", "smslant", "-w", "60", "-l", testMessage)
+            .equals(figlet(fontDirectory, "-f", "smslant", "-w", "60", "-r", testMessage)));
+    }
+
+    @Test
+    public void rejectsMissingAndInvalidValues() throws Exception {
+        String[][] invalidArgs = { { "-f" }, { "-w" }, { "-k", "-m" }, { "-w", "wide" }, { "-m", "smush" }, { "-m", "-2" } };
+        String[] invalidFlags = { "-f", "-w", "-m", "-w", "-m", "-m" };
+        for (int argsIndex = 0; argsIndex < invalidArgs.length; argsIndex++) {
+            try {
+                FIGlet.run(invalidArgs[argsIndex], ".", new FIGFontRegistry(4), new BufferedReader(new StringReader("")), new StringWriter());
+                fail("accepted " + Arrays.toString(invalidArgs[argsIndex]));
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Option " + invalidFlags[argsIndex] + " needs a"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFlags() throws Exception {
+        FIGlet.run(new String[] { "-q" }, ".", new FIGFontRegistry(4), new BufferedReader(new StringReader("")), new StringWriter());
+    }
+
+    @Test
+    public void serverKeepsFontsLoadedBetweenClients() throws Exception {
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+        FIGRenderer renderer = new FIGRenderer(font);
+        final FIGFontRegistry fonts = new FIGFontRegistry(4);
+        final String fontDirectory = font.getParent();
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ExecutorService acceptor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> server = acceptor.submit(() -> {
+                FIGlet.serve(serverSocket, fontDirectory, fonts, Executors.newCachedThreadPool());
+                return null;
+            });
+
+            FIGOptions options = renderer.getDefaultOptions().withUniversalSmushing();
+            for (int client = 0; client < 2; client++)
+                assertEquals(renderer.render("Hi", options) + "\n" + renderer.render("there", options) + "\n",
+                    request(serverSocket, "-f smslant -o\nHi\nthere\n"));
+            assertEquals(1, fonts.getStats().getMissCount());
+            assertEquals(1, fonts.getStats().getHitCount());
+
+            serverSocket.close();
+            server.get(5, TimeUnit.SECONDS);
+        } finally {
+            serverSocket.close();
+            acceptor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void serverDisconnectsClientsItCantServe() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ExecutorService acceptor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> server = acceptor.submit(() -> {
+                FIGlet.serve(serverSocket, ".", new FIGFontRegistry(4), command -> { throw new RejectedExecutionException(); });
+                return null;
+            });
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                socket.setSoTimeout(5000);
+                assertEquals(-1, socket.getInputStream().read());
+            }
+
+            serverSocket.close();
+            server.get(5, TimeUnit.SECONDS);
+        } finally {
+            serverSocket.close();
+            acceptor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void serverOnlyUsesFontsOfItsDirectoryByName() throws Exception {
+        File font = new File(getClass().getResource("/smslant.flf").toURI());
+        final String fontDirectory = font.getParent();
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ExecutorService acceptor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> server = acceptor.submit(() -> {
+                FIGlet.serve(serverSocket, fontDirectory, new FIGFontRegistry(4), Executors.newFixedThreadPool(2));
+                return null;
+            });
+
+            assertEquals("error: Option -d isn't accepted by the server\n", request(serverSocket, "-d " + fontDirectory + " -f smslant\nHi\n"));
+            assertEquals("error: Fonts are given by name on the server: " + font.getPath() + "\n", request(serverSocket, "-f " + font.getPath() + "\nHi\n"));
+            assertEquals("error: Fonts are given by name on the server: ../smslant\n", request(serverSocket, "-f ../smslant\nHi\n"));
+            assertEquals("error: Font not found: missing\n", request(serverSocket, "-f missing\nHi\n"));
+            assertEquals(new FIGRenderer(font).render("Hi") + "\n", request(serverSocket, "-f smslant.flf\nHi\n"));
+
+            serverSocket.close();
+            server.get(5, TimeUnit.SECONDS);
+        } finally {
+            serverSocket.close();
+            acceptor.shutdownNow();
+        }
+    }
+
+    //output of FIGlet for args ending in a message
+    private static String figlet(String fontDirectory, String... args) throws Exception {
+        StringWriter out = new StringWriter();
+        FIGlet.run(args, fontDirectory, new FIGFontRegistry(4), new BufferedReader(new StringReader("")), out);
+        String output = out.toString();
+        assertTrue(output.endsWith("\n"));
+        return output.substring(0, output.length() - 1);
+    }
+
+    //sends the request and returns everything the server writes back
+    private static String request(ServerSocket serverSocket, String request) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream requestStream = socket.getOutputStream();
+            requestStream.write(request.getBytes("UTF-8"));
+            socket.shutdownOutput();
+
+            StringBuilder response = new StringBuilder();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            for (int c = in.read(); c >= 0; c = in.read())
+                response.append((char)c);
+            return response.toString();
+        }
+    }
+}
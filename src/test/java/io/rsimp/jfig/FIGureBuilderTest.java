@@ -0,0 +1,85 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FIGureBuilderTest {
+    static String testMessage = "The quick brown fox\njumps over the lazy dog";
+
+    @Test
+    public void appendRendersLikeWholeText() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions defaults = renderer.getDefaultOptions();
+        for (FIGOptions options : new FIGOptions[] {
+            defaults, defaults.withFullWidthMode(), defaults.withKerningMode(), defaults.withUniversalSmushing(), defaults.withPrefix("> ")
+        }) {
+            FIGureBuilder builder = renderer.newBuilder(options);
+            assertEquals(renderer.render("", options), builder.toString());
+            for (int textIndex = 0; textIndex < testMessage.length(); textIndex++) {
+                builder.append(testMessage.charAt(textIndex));
+                assertEquals(renderer.render(testMessage.substring(0, textIndex + 1), options), builder.toString());
+            }
+            assertEquals(testMessage, builder.getText());
+
+            //a '\r' is rendered until a '\n' follows it
+            builder.clear();
+            builder.append("a\r");
+            assertEquals(renderer.render("a\r", options), builder.toString());
+            builder.append("\nb");
+            assertEquals(renderer.render("a\r\nb", options), builder.toString());
+            assertEquals(renderer.render("a\nb", options), builder.toString());
+            builder.removeLast();
+            builder.removeLast();
+            assertEquals(renderer.render("a\r", options), builder.toString());
+            assertEquals("a\r", builder.getText());
+        }
+    }
+
+    @Test
+    public void removeLastRestoresEarlierFIGures() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGureBuilder builder = renderer.newBuilder().append(testMessage);
+
+        for (int textLength = testMessage.length(); textLength > 0; textLength--) {
+            assertEquals(testMessage.charAt(textLength - 1), builder.removeLast());
+            assertEquals(textLength - 1, builder.length());
+            assertEquals(renderer.render(testMessage.substring(0, textLength - 1)), builder.toString());
+        }
+
+        builder.append("lazy\ndog").removeLast();
+        builder.append('g');
+        StringBuilder out = new StringBuilder();
+        builder.writeTo(out);
+        assertEquals(renderer.render("lazy\ndog"), out.toString());
+
+        builder.clear();
+        assertEquals(0, builder.length());
+        assertEquals(renderer.render("fox"), builder.append("fox").toString());
+    }
+
+    @Test
+    public void supplementaryCharactersCountOnce() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        String text = "a😀b";
+        FIGureBuilder builder = renderer.newBuilder().append(text);
+
+        assertEquals(3, builder.length());
+        assertEquals(text, builder.getText());
+        assertEquals(renderer.render(text), builder.toString());
+        assertEquals('b', builder.removeLast());
+        assertEquals(0x1F600, builder.removeLast());
+        assertEquals(renderer.render("a"), builder.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removeFromEmptyBuilder() throws Exception {
+        new FIGRenderer(getClass().getResource("/smslant.flf")).newBuilder().removeLast();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrappingOptionsAreRejected() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        renderer.newBuilder(renderer.getDefaultOptions().withWidth(40));
+    }
+}
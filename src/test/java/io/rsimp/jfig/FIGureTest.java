@@ -0,0 +1,80 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FIGureTest {
+    static final int UNIVERSAL_SMUSHING = 128;
+    static final int CONTROLLED_SMUSHING = 128 + 1 + 2 + 4 + 8 + 16 + 32;
+
+    @Test
+    public void blankGlyphLinesNeverSmush() throws Exception {
+        FIGRenderer renderer = renderer(UNIVERSAL_SMUSHING,
+            "|   \n" +
+            "|   \n" +
+            "|__ ",
+            " | \n" +
+            "   \n" +
+            "/  ",
+            "  \n" +
+            "  \n" +
+            "  "
+        );
+        FIGOptions controlled = renderer.getDefaultOptions().withLayout(CONTROLLED_SMUSHING);
+
+        //only the bottom lines smush, the blank middle line of b keeps a's sub-characters and spaces
+        String smushed = lines("|  | ", "|    ", "|_/  ");
+        assertEquals(smushed, renderer.render("ab"));
+        assertEquals(smushed, renderer.render("ab", controlled));
+        assertEquals(lines(" |   ", " |   ", "/|__ "), renderer.render("ba"));
+
+        //c is blank and can't overlap a's bottom line, so it's fitted instead of being smushed past it
+        assertEquals(lines("|  ", "|  ", "|__"), renderer.render("ac"));
+        String fittedBlank = lines("| |   ", "| |   ", "|_|__ ");
+        assertEquals(fittedBlank, renderer.render("aca"));
+        assertEquals(fittedBlank, renderer.render("aca", controlled));
+    }
+
+    @Test
+    public void linesWithNothingToSmushIntoAreFitted() throws Exception {
+        FIGRenderer renderer = renderer(UNIVERSAL_SMUSHING,
+            "\n\n",
+            "/|\n" +
+            "\\|\n" +
+            "_|"
+        );
+        String b = lines("/|", "\\|", "_|");
+
+        //a is zero width, so b has nothing to smush into and is fitted
+        assertEquals(b, renderer.render("ab"));
+        assertEquals(b, renderer.render("ab", renderer.getDefaultOptions().withLayout(CONTROLLED_SMUSHING)));
+        assertEquals(b, renderer.render("ba"));
+        assertEquals(renderer.render("bb"), renderer.render("bab"));
+        assertEquals(lines("//|", "\\\\|", "__|"), renderer.render("bab"));
+    }
+
+    private static String lines(String... lines){
+        StringBuilder joined = new StringBuilder(lines[0]);
+        for (int lineIndex = 1; lineIndex < lines.length; lineIndex++)
+            joined.append('\n').append(lines[lineIndex]);
+        return joined.toString();
+    }
+
+    //font of FIGcharacters 3 high, glyphs are given for 'a', 'b' and so on, the rest are one blank column
+    //glyph lines are separated by '\n' and end markers are added, so lines must be padded to the glyph width
+    private static FIGRenderer renderer(int fullLayout, String... glyphs) throws Exception {
+        StringBuilder font = new StringBuilder("flf2a$ 3 3 10 0 0 0 " + fullLayout + "\n");
+        for (int charCode = 32; charCode < 127 + 7; charCode++) {
+            int glyphIndex = charCode - 'a';
+            String glyph = glyphIndex >= 0 && glyphIndex < glyphs.length ? glyphs[glyphIndex] : " \n \n ";
+            String[] lines = glyph.split("\n", -1);
+            for (int lineIndex = 0; lineIndex < lines.length; lineIndex++)
+                font.append(lines[lineIndex]).append(lineIndex == lines.length - 1 ? "@@\n" : "@\n");
+        }
+        return new FIGRenderer(new ByteArrayInputStream(font.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,34 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GlyphIndexTest {
+    @Test
+    public void storesDenseAndSparseCodePoints() {
+        GlyphIndex index = new GlyphIndex();
+        index.put('A', 0);
+        index.put(-2, 1);
+        for (int codePoint = 0x4E00; codePoint < 0x4E00 + 1000; codePoint++)
+            index.put(codePoint, codePoint - 0x4E00 + 2);
+        index.put(0x1F600, 1002);
+        index.put(-2, 1003); //replaces
+
+        assertEquals(0, index.get('A'));
+        assertEquals(1003, index.get(-2));
+        assertEquals(3, index.get(0x4E01));
+        assertEquals(1002, index.get(0x1F600));
+        assertEquals(GlyphIndex.NO_GLYPH, index.get('B'));
+        assertEquals(GlyphIndex.NO_GLYPH, index.get(0x1F601));
+        assertEquals(1003, index.size());
+
+        int[] codePoints = index.getCodePoints();
+        Arrays.sort(codePoints);
+        assertEquals(1003, codePoints.length);
+        assertEquals(-2, codePoints[0]);
+        assertEquals(0x1F600, codePoints[codePoints.length - 1]);
+    }
+}
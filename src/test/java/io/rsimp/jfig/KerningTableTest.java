@@ -0,0 +1,163 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import io.rsimp.jfig.SmushRules.ICharSmushFunction;
+
+import static org.junit.Assert.*;
+
+//appends through the KerningTable must lay out exactly like the direct path, which measures every line of the FIGure
+public class KerningTableTest {
+    static final char hardBlank = '$';
+    static final int[] SMUSHING_LAYOUTS = {
+        128 + 1 + 2 + 4 + 8 + 16 + 32, //controlled smushing by every rule
+        128 //universal smushing
+    };
+
+    @Test
+    public void generatedGlyphsMatchDirectPath() throws Exception {
+        assertTableMatchesDirectPath(generatedGlyphs(4, new Random(7)));
+    }
+
+    @Test
+    public void smslantGlyphsMatchDirectPath() throws Exception {
+        assertTableMatchesDirectPath(smslantGlyphs());
+    }
+
+    //every pair and a sample of triples and longer runs in fitted, controlled smushed and universal smushed layouts
+    private static void assertTableMatchesDirectPath(GlyphStore glyphs) throws Exception {
+        final FIGCharacter[] tableCharacters = new FIGCharacter[KerningTable.PAIR_RANGE];
+        final FIGCharacter[] directCharacters = new FIGCharacter[KerningTable.PAIR_RANGE];
+        for (int glyphId = 0; glyphId < KerningTable.PAIR_RANGE; glyphId++) {
+            tableCharacters[glyphId] = new FIGCharacter(glyphs, glyphId, glyphId);
+            directCharacters[glyphId] = new FIGCharacter(glyphs, glyphId, -1); //never looked up in a table
+        }
+
+        List<int[]> sequences = new ArrayList<>();
+        for (int left = 0; left < KerningTable.PAIR_RANGE; left++)
+            for (int right = 0; right < KerningTable.PAIR_RANGE; right++)
+                sequences.add(new int[] { left, right });
+        Random random = new Random(42);
+        for (int sample = 0; sample < 30000; sample++)
+            sequences.add(randomSequence(random, 3));
+        for (int sample = 0; sample < 2000; sample++)
+            sequences.add(randomSequence(random, 12));
+
+        List<ICharSmushFunction> smushFunctions = new ArrayList<>();
+        smushFunctions.add(null); //fitted
+        for (int layoutMask : SMUSHING_LAYOUTS)
+            smushFunctions.add(new SmushTable(SmushRules.horizontalRules(Layout.fromFullMask(layoutMask).horizontal, hardBlank)));
+
+        //threads share each table, racing to compute the same entries
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (ICharSmushFunction smushFunction : smushFunctions) {
+                final KerningTable table = new KerningTable(glyphs.height, smushFunction);
+                final KerningTable unusedTable = new KerningTable(glyphs.height, smushFunction);
+                List<Future<String>> mismatches = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++) {
+                    final List<int[]> threadSequences = new ArrayList<>(sequences);
+                    Collections.shuffle(threadSequences, new Random(thread));
+                    mismatches.add(executor.submit(() -> {
+                        for (int[] sequence : threadSequences) {
+                            String tableLayout = layOut(sequence, tableCharacters, table);
+                            String directLayout = layOut(sequence, directCharacters, unusedTable);
+                            if (!tableLayout.equals(directLayout))
+                                return describe(sequence) + "\n" + directLayout + "\n---\n" + tableLayout;
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<String> mismatch : mismatches)
+                    assertNull(mismatch.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    //lines of the FIGure with their trailing spaces
+    private static String layOut(int[] sequence, FIGCharacter[] characters, KerningTable table){
+        FIGure figure = new FIGure(characters[0].height, "");
+        for (int glyphId : sequence) {
+            if (table.getSmushFunction() == null)
+                figure.fittedAppend(characters[glyphId], table);
+            else
+                figure.smushAppend(characters[glyphId], table);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (FIGure.FIGureLine line : figure.lines)
+            lines.append(line.content).append('|').append(line.rightSpaces).append('\n');
+        return lines.toString();
+    }
+
+    private static int[] randomSequence(Random random, int length){
+        int[] sequence = new int[length];
+        for (int index = 0; index < length; index++)
+            sequence[index] = random.nextInt(KerningTable.PAIR_RANGE);
+        return sequence;
+    }
+
+    private static String describe(int[] sequence){
+        StringBuilder glyphIds = new StringBuilder("glyphs");
+        for (int glyphId : sequence)
+            glyphIds.append(' ').append(glyphId);
+        return glyphIds.toString();
+    }
+
+    //glyphs of random width built from sub-characters the smush rules treat differently
+    //about a third of the lines are blank and a third hold one sub-character, some glyphs are entirely blank or zero width
+    private static GlyphStore generatedGlyphs(int height, Random random) throws Exception {
+        String subCharacters = "|/\\_[]{}()<>-=xX" + hardBlank;
+        GlyphStore.Builder glyphs = new GlyphStore.Builder(height, KerningTable.PAIR_RANGE);
+        for (int glyphId = 0; glyphId < KerningTable.PAIR_RANGE; glyphId++) {
+            int width = glyphId % 19 == 0 ? 0 : 1 + random.nextInt(5);
+            boolean isBlank = glyphId % 13 == 0;
+            String[] lines = new String[height];
+            for (int lineIndex = 0; lineIndex < height; lineIndex++) {
+                char[] line = new char[width];
+                Arrays.fill(line, ' ');
+                int kind = isBlank || width == 0 ? 0 : random.nextInt(3);
+                if (kind == 1) {
+                    line[random.nextInt(width)] = subCharacters.charAt(random.nextInt(subCharacters.length()));
+                } else if (kind == 2) {
+                    for (int column = 0; column < width; column++)
+                        if (random.nextInt(4) > 0)
+                            line[column] = subCharacters.charAt(random.nextInt(subCharacters.length()));
+                }
+                lines[lineIndex] = new String(line) + (lineIndex == height - 1 ? "@@" : "@");
+            }
+            glyphs.add(lines);
+        }
+        return glyphs.build();
+    }
+
+    //the printable ASCII glyphs of smslant.flf
+    private GlyphStore smslantGlyphs() throws Exception {
+        try (BufferedReader font = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/smslant.flf"), StandardCharsets.UTF_8))) {
+            String[] header = font.readLine().split(" ");
+            int height = Integer.parseInt(header[1]);
+            for (int commentLine = Integer.parseInt(header[5]); commentLine > 0; commentLine--)
+                font.readLine();
+            GlyphStore.Builder glyphs = new GlyphStore.Builder(height, KerningTable.PAIR_RANGE);
+            for (int glyphId = 0; glyphId < KerningTable.PAIR_RANGE; glyphId++) {
+                String[] lines = new String[height];
+                for (int lineIndex = 0; lineIndex < height; lineIndex++)
+                    lines[lineIndex] = font.readLine();
+                glyphs.add(lines);
+            }
+            return glyphs.build();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OutputFormatTest {
+    static String testMessage = "The quick brown fox\njumps over <the> lazy dog & cat";
+
+    @Test
+    public void ansiOutputIsPlainOutputWithColors() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions defaults = renderer.getDefaultOptions();
+        ColorGradient rainbow = ColorGradient.byColumn(0xFF0000, 0x00FF00, 0x0000FF);
+        for (FIGOptions options : new FIGOptions[] {
+            defaults, defaults.withLayout(143).withPrefix("> "), defaults.withBorder('#').withJustification(FIGOptions.Justification.CENTER).withWidth(70)
+        }) {
+            String plain = renderer.render(testMessage, options);
+            for (AnsiOutputFormat.ColorDepth colorDepth : AnsiOutputFormat.ColorDepth.values()) {
+                String colored = renderer.render(testMessage, options, new AnsiOutputFormat(rainbow, colorDepth));
+                assertEquals(plain, colored.replaceAll("\u001B\\[[0-9;]*m", ""));
+            }
+        }
+    }
+
+    @Test
+    public void ansiColorsAreWrittenOncePerRun() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions options = renderer.getDefaultOptions().withLayout(143);
+        String plain = renderer.render("fox", options);
+        String colored = renderer.render("fox", options, new AnsiOutputFormat(ColorGradient.solid(0xFF8700), AnsiOutputFormat.ColorDepth.COLORS_256));
+
+        String[] plainLines = plain.split("\n", -1);
+        String[] coloredLines = colored.split("\n", -1);
+        for (int lineIndex = 0; lineIndex < plainLines.length; lineIndex++) {
+            if (plainLines[lineIndex].trim().isEmpty())
+                assertEquals(plainLines[lineIndex], coloredLines[lineIndex]);
+            else
+                assertEquals("\u001B[38;5;208m" + plainLines[lineIndex] + "\u001B[0m", coloredLines[lineIndex]);
+        }
+        assertTrue(renderer.render("fox", options, new AnsiOutputFormat(ColorGradient.solid(0xFF0000), AnsiOutputFormat.ColorDepth.COLORS_16))
+            .startsWith("\u001B[91m"));
+        assertTrue(renderer.render("fox", options, new AnsiOutputFormat(ColorGradient.solid(0x102030), AnsiOutputFormat.ColorDepth.TRUE_COLOR))
+            .contains("\u001B[38;2;16;32;48m"));
+    }
+
+    @Test
+    public void htmlOutputIsEscapedPlainOutputInSpans() throws Exception {
+        FIGRenderer renderer = new FIGRenderer(getClass().getResource("/smslant.flf"));
+        FIGOptions options = renderer.getDefaultOptions();
+        String plain = renderer.render(testMessage, options);
+
+        String html = renderer.render(testMessage, options, new HtmlOutputFormat(ColorGradient.byCharacter(0xFF0000, 0x0000FF), "figure"));
+        assertTrue(html.startsWith("<pre class=\"figure\">"));
+        assertTrue(html.endsWith("</pre>"));
+        assertEquals(plain, unescape(html.replaceAll("<[^>]*>", "")));
+
+        //one span per FIGcharacter line at most, not one per sub-character
+        int spanCount = html.split("<span ", -1).length - 1;
+        int characterCount = testMessage.replace("\n", "").length();
+        assertTrue(spanCount <= characterCount * 5);
+        assertTrue(spanCount > characterCount);
+
+        assertEquals("<pre>" + escape(plain) + "</pre>", renderer.render(testMessage, options, new HtmlOutputFormat()));
+    }
+
+    @Test
+    public void gradientBlendsBetweenColors() throws Exception {
+        FIGSize size = new FIGSize(11, 1);
+        ColorGradient byColumn = ColorGradient.byColumn(0x000000, 0xFF00FF);
+        assertEquals(0x000000, byColumn.getColor(0, 3, size, 5));
+        assertEquals(0xFF00FF, byColumn.getColor(10, 3, size, 5));
+        assertEquals(0x7F007F, byColumn.getColor(5, 3, size, 5));
+
+        ColorGradient byCharacter = ColorGradient.byCharacter(0xFF0000, 0x00FF00, 0x0000FF);
+        assertEquals(0xFF0000, byCharacter.getColor(10, -1, size, 5));
+        assertEquals(0x00FF00, byCharacter.getColor(0, 2, size, 5));
+        assertEquals(0x0000FF, byCharacter.getColor(0, 4, size, 5));
+        assertEquals(0x123456, ColorGradient.solid(0x123456).getColor(7, 2, size, 5));
+    }
+
+    private static String unescape(String html){
+        return html.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+    }
+
+    private static String escape(String text){
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,63 @@
+package io.rsimp.jfig;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import io.rsimp.jfig.SmushRules.ICharSmushFunction;
+import io.rsimp.jfig.SmushRules.ISmushFunction;
+
+import static org.junit.Assert.*;
+
+public class SmushRulesTest {
+    static char hardBlank = '$';
+
+    @Test
+    public void controlledTableMatchesAggregateRules() {
+        ISmushFunction aggregate = SmushRules.aggregateRules(
+            Arrays.asList(
+                SmushRules.EqualCharacterRule,
+                SmushRules.UnderscoreRule,
+                SmushRules.HierarchicalRule,
+                SmushRules.OppositePairRule,
+                SmushRules.BigXRule
+            ),
+            Collections.singletonList(SmushRules.HardblankRule),
+            hardBlank
+        );
+        ICharSmushFunction table = new SmushTable(
+            SmushRules.horizontalRules(Layout.fromOldMask(63).horizontal, hardBlank)
+        );
+        assertSameResults(aggregate, table);
+    }
+
+    @Test
+    public void verticalRulesSmushLinesAndSkipHardblanks() {
+        ICharSmushFunction vertical = SmushRules.verticalRules(Layout.fromFullMask(16384 + 256 + 2048 + 4096).vertical, hardBlank);
+        assertEquals('=', vertical.smush('-', '_'));
+        assertEquals('=', vertical.smush('_', '-'));
+        assertEquals('|', vertical.smush('|', '|'));
+        assertEquals('x', vertical.smush('x', 'x'));
+        assertEquals(SmushRules.NO_SMUSH, vertical.smush(hardBlank, hardBlank));
+        assertEquals(SmushRules.NO_SMUSH, vertical.smush('/', '|'));
+    }
+
+    @Test
+    public void universalTableMatchesUniversalSmush() {
+        ICharSmushFunction table = new SmushTable(
+            SmushRules.horizontalRules(Layout.fromFullMask(128).horizontal, hardBlank)
+        );
+        assertSameResults(SmushRules.universalSmush(hardBlank), table);
+    }
+
+    private static void assertSameResults(ISmushFunction expected, ICharSmushFunction actual) {
+        String subCharacters = "_|/\\[]{}()<>$ aA-ü";
+        for (char firstChar : subCharacters.toCharArray()) {
+            for (char secondChar : subCharacters.toCharArray()) {
+                Option<Character> expectedSmush = expected.trySmush(firstChar, secondChar);
+                char expectedChar = expectedSmush.isPresent() ? expectedSmush.get() : SmushRules.NO_SMUSH;
+                assertEquals("" + firstChar + secondChar, expectedChar, actual.smush(firstChar, secondChar));
+            }
+        }
+    }
+}